@@ -0,0 +1,71 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read path of JMX-backed meters. Run with {@code -prof gc}: {@code gc.alloc.rate.norm} of
+ * {@code readGauges} should not exceed that of {@code getAttributes}, which is what the MBean server
+ * allocates for a single batched read of the same attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeReadBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int attributes;
+
+    private MBeanServer mBeanServer;
+
+    private ObjectName obj;
+
+    private String[] attrNames;
+
+    private Gauge[] gauges;
+
+    @Setup
+    public void setup() throws JMException {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        obj = new ObjectName("benchmark:type=Synthetic");
+        mBeanServer.registerMBean(new SyntheticMBean(), obj);
+
+        MeterRegistry registry = new SimpleMeterRegistry();
+        BindingContext ctx = new BindingContext(mBeanServer, registry, obj, Tags.empty());
+        attrNames = new String[attributes];
+        List<Gauge> bound = new ArrayList<>();
+        for (int i = 0; i < attributes; i++) {
+            attrNames[i] = "attribute-" + i;
+            ctx.bindGauge(attrNames[i], "benchmark." + attrNames[i], attrNames[i]);
+            bound.add(registry.get("benchmark." + attrNames[i]).gauge());
+        }
+        gauges = bound.toArray(new Gauge[0]);
+    }
+
+    @Benchmark
+    public void readGauges(Blackhole bh) {
+        for (Gauge gauge : gauges) {
+            bh.consume(gauge.value());
+        }
+    }
+
+    @Benchmark
+    public Object getAttributes() throws JMException {
+        return mBeanServer.getAttributes(obj, attrNames);
+    }
+}
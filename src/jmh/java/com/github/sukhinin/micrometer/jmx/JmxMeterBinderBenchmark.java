@@ -0,0 +1,79 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures binding meters for existing MBeans and dispatching MBean registration notifications.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JmxMeterBinderBenchmark {
+
+    private static final String JMX_DOMAIN = "benchmark";
+
+    @Param({"10", "100", "1000"})
+    private int mbeans;
+
+    @Param({"1", "10"})
+    private int types;
+
+    private MBeanServer mBeanServer;
+
+    private JmxMeterBinder notificationBinder;
+
+    private ObjectName notifiedObj;
+
+    @Setup
+    public void setup() throws JMException {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        for (int i = 0; i < mbeans; i++) {
+            mBeanServer.registerMBean(new SyntheticMBean(), new ObjectName(JMX_DOMAIN + ":type=type0,name=mbean" + i));
+        }
+
+        notificationBinder = new JmxMeterBinder(JMX_DOMAIN, obj -> Tags.of("name", obj.getKeyProperty("name")), Tags.empty(), mBeanServer);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        for (int i = 0; i < types; i++) {
+            notificationBinder.bindMetricsForMBeanType(registry, "type" + i, JmxMeterBinderBenchmark::bindMeters);
+        }
+        notifiedObj = new ObjectName(JMX_DOMAIN + ":type=type" + (types - 1) + ",name=notified");
+    }
+
+    @TearDown
+    public void tearDown() {
+        notificationBinder.close();
+    }
+
+    @Benchmark
+    public MeterRegistry bindExistingMBeans() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        try (JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, obj -> Tags.of("name", obj.getKeyProperty("name")), Tags.empty(), mBeanServer)) {
+            binder.bindMetricsForMBeanType(registry, "type0", JmxMeterBinderBenchmark::bindMeters);
+        }
+        return registry;
+    }
+
+    @Benchmark
+    public void registerAndUnregisterMBean() throws JMException {
+        mBeanServer.registerMBean(new SyntheticMBean(), notifiedObj);
+        mBeanServer.unregisterMBean(notifiedObj);
+    }
+
+    private static void bindMeters(BindingContext ctx) {
+        ctx.bindGauge("value-rate", "benchmark.value-rate", "");
+        ctx.bindFunctionCounter("value-total", "benchmark.value-total", "");
+        ctx.bindTimeGauge("value-time-avg", "benchmark.value-time-avg", "", TimeUnit.MILLISECONDS);
+    }
+}
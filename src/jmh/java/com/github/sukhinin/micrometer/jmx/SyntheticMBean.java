@@ -0,0 +1,48 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import javax.management.*;
+
+/**
+ * Dynamic MBean that, like Kafka's {@code JmxReporter} MBeans, returns a {@code Double} for any attribute name.
+ */
+public class SyntheticMBean implements DynamicMBean {
+
+    private static final MBeanInfo MBEAN_INFO = new MBeanInfo(SyntheticMBean.class.getName(), "Synthetic MBean",
+            new MBeanAttributeInfo[0], new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+
+    private volatile double value;
+
+    @Override
+    public Object getAttribute(String attribute) {
+        return value += 1.0;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList(attributes.length);
+        for (String attribute : attributes) {
+            list.add(new Attribute(attribute, getAttribute(attribute)));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return MBEAN_INFO;
+    }
+}
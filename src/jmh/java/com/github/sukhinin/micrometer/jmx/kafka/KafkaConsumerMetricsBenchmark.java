@@ -0,0 +1,74 @@
+package com.github.sukhinin.micrometer.jmx.kafka;
+
+import com.github.sukhinin.micrometer.jmx.SyntheticMBean;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scraping a registry bound to synthetic Kafka consumer MBeans. Run with {@code -prof gc}
+ * to see allocation per scrape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaConsumerMetricsBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int clients;
+
+    @Param({"10"})
+    private int partitions;
+
+    private KafkaConsumerMetrics binder;
+
+    private MeterRegistry registry;
+
+    @Setup
+    public void setup() throws JMException {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        for (int i = 0; i < clients; i++) {
+            registerConsumerMBeans(mBeanServer, "client" + i, partitions);
+        }
+        registry = new SimpleMeterRegistry();
+        binder = new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer);
+        binder.bindTo(registry);
+    }
+
+    @TearDown
+    public void tearDown() {
+        binder.close();
+    }
+
+    @Benchmark
+    public void scrape(Blackhole bh) {
+        for (Meter meter : registry.getMeters()) {
+            for (Measurement measurement : meter.measure()) {
+                bh.consume(measurement.getValue());
+            }
+        }
+    }
+
+    static void registerConsumerMBeans(MBeanServer mBeanServer, String clientId, int partitions) throws JMException {
+        mBeanServer.registerMBean(new SyntheticMBean(), new ObjectName("kafka.consumer:type=consumer-metrics,client-id=" + clientId));
+        mBeanServer.registerMBean(new SyntheticMBean(), new ObjectName("kafka.consumer:type=consumer-coordinator-metrics,client-id=" + clientId));
+        mBeanServer.registerMBean(new SyntheticMBean(), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=" + clientId));
+        mBeanServer.registerMBean(new SyntheticMBean(), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=" + clientId + ",topic=topic"));
+        for (int i = 0; i < partitions; i++) {
+            mBeanServer.registerMBean(new SyntheticMBean(), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=" + clientId + ",topic=topic,partition=" + i));
+        }
+    }
+}
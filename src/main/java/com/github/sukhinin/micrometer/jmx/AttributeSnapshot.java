@@ -0,0 +1,470 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Reads all attributes bound for a single MBean with one {@link MBeanServerConnection#getAttributes(ObjectName, String[])} call.
+ * Every bound meter owns a slot; attribute values are fetched again as soon as a meter asks for a slot it has
+ * already consumed, which happens once per registry scrape.
+ * <p>
+ * A slot reads a field of the MBean: either a numeric attribute, an item of a {@link CompositeData} attribute
+ * addressed by a path such as {@code HeapMemoryUsage.used}, or an item of a single row of a {@link TabularData}.
+ * All fields of the same attribute are extracted from a single read.
+ * <p>
+ * Values are kept as primitives in arrays that are reused between fetches, and meters read them through a
+ * {@link SlotReader} holding nothing but this snapshot and the slot, so that reading a value allocates nothing
+ * beyond what the MBean server does to return attributes.
+ * <p>
+ * Attributes whose changes are pushed by {@link AttributeChangeNotification}s are no longer read: once a notification
+ * of an attribute has been received, its fields are only updated from notifications, and a scrape of an MBean pushing
+ * all of its bound attributes reads nothing but the arrays of this snapshot.
+ * <p>
+ * When a positive TTL is given, the snapshot may be shared by meters of several registries: values are then fetched
+ * again only after the TTL has passed, regardless of which slots have been consumed. Reads are serialized, so
+ * concurrent readers coalesce onto a single in-flight fetch.
+ */
+class AttributeSnapshot {
+
+    private final BoundMBean owner;
+
+    private final MBeanServerConnection connection;
+
+    private final ObjectName obj;
+
+    private final long ttlNanos;
+
+    private final Clock clock;
+
+    private final FailurePolicy failurePolicy;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final BinderMetrics.TypeMetrics typeMetrics;
+
+    private final SnapshotPrefetcher prefetcher;
+
+    private final Object prefetchGroup;
+
+    private final AtomicBoolean prefetchScheduled = new AtomicBoolean();
+
+    private final Map<String, Integer> attrIndexes = new HashMap<>();
+
+    private final Map<Object, Integer> fieldIndexes = new HashMap<>();
+
+    private String[] attrNames = new String[0];
+
+    private int[][] attrFields = new int[0][];
+
+    private boolean[] pushed = new boolean[0];
+
+    private String[] polledAttrNames = new String[0];
+
+    private int[] polledAttrIndexes = new int[0];
+
+    private String[][] fieldPaths = new String[0][];
+
+    private Object[][] fieldRowKeys = new Object[0][];
+
+    private String[][] fieldRowPaths = new String[0][];
+
+    private int[] slotFieldIndexes = new int[0];
+
+    private boolean[] consumed = new boolean[0];
+
+    private MeterRegistry[] slotRegistries = new MeterRegistry[0];
+
+    private Meter[] slotMeters = new Meter[0];
+
+    private int[] slotFailures = new int[0];
+
+    private int fetchFailures;
+
+    private boolean timedOut;
+
+    private volatile long backoffUntil;
+
+    private double[] values = new double[0];
+
+    private boolean[] numeric = new boolean[0];
+
+    private volatile boolean anyConsumed;
+
+    private volatile boolean fetched;
+
+    private volatile long fetchedAt;
+
+    private volatile long generation;
+
+    AttributeSnapshot(BoundMBean owner, MBeanServerConnection connection, JmxMeterBinderConfig config, SnapshotPrefetcher prefetcher, Object prefetchGroup) {
+        this.owner = Objects.requireNonNull(owner);
+        this.connection = Objects.requireNonNull(connection);
+        this.obj = owner.getObjectName();
+        this.ttlNanos = config.getValueCacheTtl().toNanos();
+        this.clock = config.getClock();
+        this.failurePolicy = config.getFailurePolicy();
+        this.circuitBreaker = owner.getCircuitBreaker();
+        this.typeMetrics = owner.getTypeMetrics();
+        this.prefetcher = prefetcher;
+        this.prefetchGroup = prefetchGroup;
+    }
+
+    /**
+     * Adds a slot reading the given path, either an attribute name or {@code Attribute.item.item} for a nested item
+     * of a composite attribute.
+     */
+    synchronized int addSlot(String path) {
+        return addSlot(path, null, null);
+    }
+
+    /**
+     * Adds a slot reading an item of a single row of a tabular attribute. The row is looked up by its index values
+     * on every read, so it doesn't matter if rows are reordered or replaced.
+     *
+     * @param tablePath   path of the tabular attribute or item
+     * @param rowKey      index values of the row, or {@code null} to read the path itself
+     * @param rowItemPath path of the item within the row, e.g. {@code value.used}
+     */
+    synchronized int addSlot(String tablePath, Object[] rowKey, String rowItemPath) {
+        Object fieldKey = rowKey == null ? tablePath : Arrays.asList(tablePath, Arrays.asList(rowKey), rowItemPath);
+        Integer fieldIndex = fieldIndexes.get(fieldKey);
+        if (fieldIndex == null) {
+            String[] path = splitPath(tablePath);
+            Integer attrIndex = attrIndexes.get(path[0]);
+            if (attrIndex == null) {
+                attrIndex = attrNames.length;
+                attrIndexes.put(path[0], attrIndex);
+                attrNames = Arrays.copyOf(attrNames, attrNames.length + 1);
+                attrNames[attrIndex] = path[0];
+                attrFields = Arrays.copyOf(attrFields, attrFields.length + 1);
+                attrFields[attrIndex] = new int[0];
+                pushed = Arrays.copyOf(pushed, pushed.length + 1);
+            } else if (pushed[attrIndex]) {
+                // The value of the new field is unknown until the next notification, so the attribute is read again
+                pushed[attrIndex] = false;
+            }
+            updatePolledAttributes();
+            fieldIndex = fieldPaths.length;
+            fieldIndexes.put(fieldKey, fieldIndex);
+            fieldPaths = Arrays.copyOf(fieldPaths, fieldIndex + 1);
+            fieldPaths[fieldIndex] = Arrays.copyOfRange(path, 1, path.length);
+            fieldRowKeys = Arrays.copyOf(fieldRowKeys, fieldIndex + 1);
+            fieldRowKeys[fieldIndex] = rowKey != null ? rowKey.clone() : null;
+            fieldRowPaths = Arrays.copyOf(fieldRowPaths, fieldIndex + 1);
+            fieldRowPaths[fieldIndex] = rowKey != null ? splitPath(rowItemPath) : null;
+            int[] fields = attrFields[attrIndex];
+            attrFields[attrIndex] = Arrays.copyOf(fields, fields.length + 1);
+            attrFields[attrIndex][fields.length] = fieldIndex;
+            // Values of pushed attributes are kept, since they are not read again
+            values = Arrays.copyOf(values, fieldPaths.length);
+            numeric = Arrays.copyOf(numeric, fieldPaths.length);
+            fetched = false;
+        }
+        int slot = slotFieldIndexes.length;
+        slotFieldIndexes = Arrays.copyOf(slotFieldIndexes, slot + 1);
+        slotFieldIndexes[slot] = fieldIndex;
+        consumed = Arrays.copyOf(consumed, slot + 1);
+        slotRegistries = Arrays.copyOf(slotRegistries, slot + 1);
+        slotMeters = Arrays.copyOf(slotMeters, slot + 1);
+        slotFailures = Arrays.copyOf(slotFailures, slot + 1);
+        return slot;
+    }
+
+    /**
+     * Updates fields of an attribute from a notification of its change, and stops reading the attribute.
+     */
+    synchronized void attributeChanged(String attrName, Object value) {
+        Integer attrIndex = attrIndexes.get(attrName);
+        if (attrIndex == null) {
+            return;
+        }
+        for (int fieldIndex : attrFields[attrIndex]) {
+            numeric[fieldIndex] = false;
+            extract(fieldIndex, value);
+        }
+        if (!pushed[attrIndex]) {
+            pushed[attrIndex] = true;
+            updatePolledAttributes();
+        }
+    }
+
+    private void updatePolledAttributes() {
+        int count = 0;
+        for (boolean attrPushed : pushed) {
+            count += attrPushed ? 0 : 1;
+        }
+        polledAttrNames = new String[count];
+        polledAttrIndexes = new int[count];
+        for (int attrIndex = 0, i = 0; attrIndex < attrNames.length; attrIndex++) {
+            if (!pushed[attrIndex]) {
+                polledAttrNames[i] = attrNames[attrIndex];
+                polledAttrIndexes[i++] = attrIndex;
+            }
+        }
+    }
+
+    /**
+     * Associates the meter reading the given slot, so that it can be unbound once the attribute cannot be read.
+     */
+    synchronized void setMeter(int slot, MeterRegistry registry, Meter meter) {
+        slotRegistries[slot] = registry;
+        slotMeters[slot] = meter;
+    }
+
+    /**
+     * Returns the value of the attribute bound to the given slot, or {@code NaN} if it cannot be read. If the MBean
+     * is gone or the attribute is missing or not a number, the failure policy decides whether the meter of the slot
+     * is unbound. Connection failures say nothing about the MBean itself and only result in {@code NaN}.
+     */
+    double read(int slot) {
+        MeterRegistry failedRegistry;
+        Meter failedMeter;
+        // A snapshot whose refresh has been scheduled has been found by a walk of this scrape already. Other
+        // snapshots are scheduled without holding the lock, so that readers of this snapshot don't wait for it.
+        if (prefetcher != null && backoffUntil == 0 && !prefetchScheduled.get() && needsFetch(slot)) {
+            prefetcher.prefetch(prefetchGroup, this);
+        }
+        synchronized (this) {
+            try {
+                if (needsFetch(slot)) {
+                    if (backoffUntil != 0 && clock.monotonicTime() - backoffUntil < 0) {
+                        failurePolicy.recordSkippedRead();
+                        return Double.NaN;
+                    }
+                    fetchWithBackoff();
+                }
+                consumed[slot] = true;
+                anyConsumed = true;
+                int fieldIndex = slotFieldIndexes[slot];
+                if (numeric[fieldIndex]) {
+                    slotFailures[slot] = 0;
+                    return values[fieldIndex];
+                }
+                if (timedOut) {
+                    // Attributes were not returned in time, which is not a failure of the attribute
+                    return Double.NaN;
+                }
+            } catch (IOException e) {
+                return Double.NaN;
+            } catch (JMException ignored) {
+                // The MBean is gone or cannot be read, which is handled by the failure policy below
+            }
+            failurePolicy.recordFailure();
+            if (slotMeters[slot] == null || !failurePolicy.shouldRemove(++slotFailures[slot])) {
+                return Double.NaN;
+            }
+            failurePolicy.recordRemovedMeter();
+            failedRegistry = slotRegistries[slot];
+            failedMeter = slotMeters[slot];
+            slotMeters[slot] = null;
+        }
+        // Removing the meter takes registry locks, which must not be done while holding the snapshot lock
+        owner.removeMeter(failedRegistry, failedMeter);
+        return Double.NaN;
+    }
+
+    /**
+     * Returns whether the next read would fetch attribute values, without acquiring the snapshot lock.
+     */
+    boolean isStale() {
+        if (!fetched) {
+            return true;
+        }
+        if (ttlNanos > 0) {
+            return clock.monotonicTime() - fetchedAt >= ttlNanos;
+        }
+        return anyConsumed;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    boolean tryMarkPrefetchScheduled() {
+        return prefetchScheduled.compareAndSet(false, true);
+    }
+
+    void cancelPrefetch() {
+        prefetchScheduled.set(false);
+    }
+
+    /**
+     * Fetches attribute values unless they have been fetched since the prefetch was scheduled.
+     * Errors are left for the next reader to run into and handle.
+     */
+    synchronized void prefetch(long scheduledGeneration) {
+        prefetchScheduled.set(false);
+        if (generation != scheduledGeneration || backoffUntil != 0) {
+            return;
+        }
+        try {
+            fetchWithBackoff();
+        } catch (JMException | IOException | RuntimeException ignored) {
+            // The reader of this snapshot will fetch again and handle the error
+        }
+    }
+
+    private synchronized boolean needsFetch(int slot) {
+        return !fetched || isStale(slot);
+    }
+
+    private boolean isStale(int slot) {
+        if (ttlNanos > 0) {
+            return clock.monotonicTime() - fetchedAt >= ttlNanos;
+        }
+        return consumed[slot];
+    }
+
+    private void fetchWithBackoff() throws InstanceNotFoundException, ReflectionException, IOException {
+        try {
+            fetch();
+            fetchFailures = 0;
+            backoffUntil = 0;
+        } catch (InstanceNotFoundException | ReflectionException e) {
+            long backoffNanos = failurePolicy.getBackoffNanos(++fetchFailures);
+            if (backoffNanos > 0) {
+                // Zero means no backoff, so a deadline that happens to be zero is moved by a nanosecond
+                long deadline = clock.monotonicTime() + backoffNanos;
+                backoffUntil = deadline != 0 ? deadline : 1;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches attribute values, keeping last known values if the MBean did not return them within the time budget.
+     */
+    private void fetch() throws InstanceNotFoundException, ReflectionException, IOException {
+        if (polledAttrNames.length == 0) {
+            // All attributes are pushed, so values are as fresh as they can be
+            timedOut = false;
+            markFetched();
+            return;
+        }
+        AttributeList attributes;
+        if (typeMetrics == null) {
+            attributes = getAttributes();
+        } else {
+            long start = typeMetrics.startRead();
+            boolean failed = true;
+            try {
+                attributes = getAttributes();
+                failed = attributes == null;
+            } finally {
+                typeMetrics.recordRead(start, polledAttrNames.length, failed);
+            }
+        }
+        timedOut = attributes == null;
+        if (timedOut) {
+            markFetched();
+            return;
+        }
+        for (int attrIndex : polledAttrIndexes) {
+            for (int fieldIndex : attrFields[attrIndex]) {
+                numeric[fieldIndex] = false;
+            }
+        }
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute attribute = (Attribute) attributes.get(i);
+            int attrIndex = indexOf(attribute.getName(), i);
+            if (attrIndex >= 0) {
+                for (int fieldIndex : attrFields[attrIndex]) {
+                    extract(fieldIndex, attribute.getValue());
+                }
+            }
+        }
+        markFetched();
+    }
+
+    private void extract(int fieldIndex, Object value) {
+        value = resolve(value, fieldPaths[fieldIndex]);
+        Object[] rowKey = fieldRowKeys[fieldIndex];
+        if (rowKey != null) {
+            TabularData table = value instanceof TabularData ? (TabularData) value : null;
+            value = table != null && table.containsKey(rowKey) ? resolve(table.get(rowKey), fieldRowPaths[fieldIndex]) : null;
+        }
+        if (value instanceof Number) {
+            values[fieldIndex] = ((Number) value).doubleValue();
+            numeric[fieldIndex] = true;
+        }
+    }
+
+    /**
+     * Follows a path of item names through nested composite values.
+     *
+     * @return value at the end of the path, or {@code null} if any of the items is missing
+     */
+    static Object resolve(Object value, String[] items) {
+        for (String item : items) {
+            CompositeData composite = value instanceof CompositeData ? (CompositeData) value : null;
+            value = composite != null && composite.containsKey(item) ? composite.get(item) : null;
+        }
+        return value;
+    }
+
+    static String[] splitPath(String path) {
+        String[] items = path.split("\\.", -1);
+        for (String item : items) {
+            if (item.isEmpty()) {
+                throw new IllegalArgumentException("Invalid attribute path: " + path);
+            }
+        }
+        return items;
+    }
+
+    private AttributeList getAttributes() throws InstanceNotFoundException, ReflectionException, IOException {
+        return circuitBreaker != null
+                ? circuitBreaker.getAttributes(connection, obj, polledAttrNames)
+                : connection.getAttributes(obj, polledAttrNames);
+    }
+
+    private void markFetched() {
+        Arrays.fill(consumed, false);
+        anyConsumed = false;
+        fetchedAt = clock.monotonicTime();
+        generation++;
+        fetched = true;
+    }
+
+    private int indexOf(String attrName, int position) {
+        // MBean servers return attributes in the requested order, unless some of them could not be read
+        if (position < polledAttrNames.length && polledAttrNames[position].equals(attrName)) {
+            return polledAttrIndexes[position];
+        }
+        Integer attrIndex = attrIndexes.get(attrName);
+        return attrIndex != null && !pushed[attrIndex] ? attrIndex : -1;
+    }
+
+    /**
+     * Reads a single slot of a snapshot. This is the only per-meter object on the read path.
+     */
+    static final class SlotReader implements ToDoubleFunction<AttributeSnapshot> {
+
+        private final AttributeSnapshot snapshot;
+
+        private final int slot;
+
+        SlotReader(AttributeSnapshot snapshot, int slot) {
+            this.snapshot = snapshot;
+            this.slot = slot;
+        }
+
+        @Override
+        public double applyAsDouble(AttributeSnapshot ignored) {
+            // The snapshot is also referenced here, since meters only keep weak references to their state objects
+            return snapshot.read(slot);
+        }
+    }
+}
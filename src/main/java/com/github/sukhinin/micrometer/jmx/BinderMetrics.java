@@ -0,0 +1,200 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters describing the cost of a single {@link JmxMeterBinder}: read time, reads and failures per MBean type,
+ * the number of bound meters and MBeans, and the latency and failures of binding meters for newly registered MBeans.
+ * All meters are tagged with the JMX domain of the binder.
+ * <p>
+ * Binders of the same domain publishing to the same registry share a single instance, so that their meters add up
+ * instead of colliding; the instance is reference counted, and its meters are removed once the last binder closes.
+ */
+class BinderMetrics {
+
+    private static final String NO_TYPE = "none";
+
+    private static final Map<MeterRegistry, Map<String, BinderMetrics>> SHARED = new IdentityHashMap<>();
+
+    private final MeterRegistry registry;
+
+    private final String jmxDomain;
+
+    private final Tags tags;
+
+    private final AtomicLong boundMeters = new AtomicLong();
+
+    private final AtomicLong boundMBeans = new AtomicLong();
+
+    private final Timer bindLatency;
+
+    private final Counter bindFailures;
+
+    private final ConcurrentMap<String, TypeMetrics> typeMetrics = new ConcurrentHashMap<>();
+
+    private final List<Meter> meters = new ArrayList<>();
+
+    private int references;
+
+    private BinderMetrics(MeterRegistry registry, String jmxDomain) {
+        this.registry = registry;
+        this.jmxDomain = jmxDomain;
+        this.tags = Tags.of("domain", jmxDomain);
+        meters.add(Gauge.builder("jmx.binder.meters", boundMeters, AtomicLong::doubleValue)
+                .description("The number of meters currently bound to MBean attributes.")
+                .tags(tags)
+                .register(registry));
+        meters.add(Gauge.builder("jmx.binder.mbeans", boundMBeans, AtomicLong::doubleValue)
+                .description("The number of MBeans meters are currently bound for.")
+                .tags(tags)
+                .register(registry));
+        this.bindLatency = Timer.builder("jmx.binder.bind.latency")
+                .description("Time from the registration of an MBean until its meters are bound.")
+                .tags(tags)
+                .register(registry);
+        meters.add(bindLatency);
+        this.bindFailures = Counter.builder("jmx.binder.bind.failures")
+                .description("The total number of newly registered MBeans whose binding callbacks failed.")
+                .tags(tags)
+                .register(registry);
+        meters.add(bindFailures);
+    }
+
+    /**
+     * Returns meters of the given domain in the given registry, registering them unless another binder already has.
+     * Every call must be paired with {@link #release()}.
+     */
+    static BinderMetrics acquire(MeterRegistry registry, String jmxDomain) {
+        synchronized (SHARED) {
+            BinderMetrics metrics = SHARED.computeIfAbsent(registry, key -> new HashMap<>())
+                    .computeIfAbsent(jmxDomain, key -> new BinderMetrics(registry, jmxDomain));
+            metrics.references++;
+            return metrics;
+        }
+    }
+
+    /**
+     * Releases meters acquired by a binder, removing them once no binder uses them anymore. Releasing meters that
+     * have been removed already has no effect.
+     */
+    void release() {
+        synchronized (SHARED) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+            Map<String, BinderMetrics> domains = SHARED.get(registry);
+            if (domains != null) {
+                domains.remove(jmxDomain, this);
+                if (domains.isEmpty()) {
+                    SHARED.remove(registry);
+                }
+            }
+            // Meters are removed before another binder can acquire new ones with the same IDs
+            meters.forEach(registry::remove);
+            for (TypeMetrics metrics : typeMetrics.values()) {
+                registry.remove(metrics.readTime);
+                registry.remove(metrics.attributeReads);
+                registry.remove(metrics.readFailures);
+            }
+        }
+    }
+
+    /**
+     * Returns read meters shared by all MBeans of the type of the given MBean.
+     */
+    TypeMetrics forMBean(ObjectName obj) {
+        String type = obj.getKeyProperty("type");
+        return typeMetrics.computeIfAbsent(type != null ? type : NO_TYPE, this::createTypeMetrics);
+    }
+
+    long startBinding() {
+        return registry.config().clock().monotonicTime();
+    }
+
+    void recordBinding(long startNanos) {
+        bindLatency.record(registry.config().clock().monotonicTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordBindingFailure() {
+        bindFailures.increment();
+    }
+
+    void meterAdded() {
+        boundMeters.incrementAndGet();
+    }
+
+    void metersRemoved(int count) {
+        boundMeters.addAndGet(-count);
+    }
+
+    void mbeanAdded() {
+        boundMBeans.incrementAndGet();
+    }
+
+    void mbeanRemoved() {
+        boundMBeans.decrementAndGet();
+    }
+
+    private TypeMetrics createTypeMetrics(String type) {
+        return new TypeMetrics(registry, tags.and("type", type));
+    }
+
+    /**
+     * Read meters of a single MBean type. Reads are recorded by attribute snapshots of the type's MBeans.
+     */
+    static final class TypeMetrics {
+
+        private final Clock clock;
+
+        private final Timer readTime;
+
+        private final Counter attributeReads;
+
+        private final Counter readFailures;
+
+        private TypeMetrics(MeterRegistry registry, Tags tags) {
+            this.clock = registry.config().clock();
+            this.readTime = Timer.builder("jmx.binder.read")
+                    .description("Time spent reading attributes of MBeans, one sample per getAttributes call.")
+                    .tags(tags)
+                    .register(registry);
+            this.attributeReads = Counter.builder("jmx.binder.attribute.reads")
+                    .description("The total number of attribute values requested from MBeans.")
+                    .tags(tags)
+                    .register(registry);
+            this.readFailures = Counter.builder("jmx.binder.read.failures")
+                    .description("The total number of MBean reads that failed, missed the read timeout or hit an open circuit.")
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        long startRead() {
+            return clock.monotonicTime();
+        }
+
+        void recordRead(long startNanos, int attributes, boolean failed) {
+            readTime.record(clock.monotonicTime() - startNanos, TimeUnit.NANOSECONDS);
+            attributeReads.increment(attributes);
+            if (failed) {
+                readFailures.increment();
+            }
+        }
+    }
+}
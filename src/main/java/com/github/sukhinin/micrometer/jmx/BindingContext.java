@@ -2,17 +2,32 @@ package com.github.sukhinin.micrometer.jmx;
 
 import io.micrometer.core.instrument.*;
 
+import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
-import javax.management.MBeanServer;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.ToDoubleFunction;
+import java.util.function.BiFunction;
+import java.util.function.DoubleSupplier;
 
+/**
+ * Binds meters for a single MBean. Attributes are addressed by name, or by a path such as {@code HeapMemoryUsage.used}
+ * for items of composite attributes. All meters of the MBean are read with a single read per scrape, so meters bound
+ * to several items of the same composite attribute share a single read of it.
+ */
 public class BindingContext {
 
-    private final MBeanServer mBeanServer;
+    private final BoundMBean boundMBean;
+
+    private final MBeanServerConnection connection;
 
     private final MeterRegistry registry;
 
@@ -20,11 +35,19 @@ public class BindingContext {
 
     private final Iterable<Tag> tags;
 
-    BindingContext(MBeanServer mBeanServer, MeterRegistry registry, ObjectName obj, Iterable<Tag> tags) {
-        this.mBeanServer = Objects.requireNonNull(mBeanServer);
+    private final AttributeSnapshot snapshot;
+
+    BindingContext(MBeanServerConnection connection, MeterRegistry registry, ObjectName obj, Iterable<Tag> tags) {
+        this(new BoundMBean(connection, obj, Tags.of(tags), JmxMeterBinderConfig.DEFAULT, null), registry);
+    }
+
+    BindingContext(BoundMBean boundMBean, MeterRegistry registry) {
+        this.boundMBean = Objects.requireNonNull(boundMBean);
+        this.connection = boundMBean.getConnection();
         this.registry = Objects.requireNonNull(registry);
-        this.obj = Objects.requireNonNull(obj);
-        this.tags = Objects.requireNonNull(tags);
+        this.obj = boundMBean.getObjectName();
+        this.tags = boundMBean.getTags();
+        this.snapshot = boundMBean.getSnapshot(registry);
     }
 
     public ObjectName getObjectName() {
@@ -35,36 +58,169 @@ public class BindingContext {
         return tags;
     }
 
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Registers an action to run once meters of this MBean are unbound, either because the MBean
+     * has been unregistered or because the binder has been closed.
+     *
+     * @param action action to run
+     */
+    public void onUnbind(Runnable action) {
+        boundMBean.addUnbindAction(Objects.requireNonNull(action));
+    }
+
+    /**
+     * Subscribes to notifications emitted by the MBean. The listener is removed once meters of this MBean are
+     * unbound. Nothing is subscribed if the MBean has already gone away.
+     *
+     * @param listener listener of notifications
+     * @param filter   filter of notifications, must be serializable for remote connections, or {@code null}
+     */
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter) {
+        try {
+            connection.addNotificationListener(obj, listener, filter, null);
+        } catch (InstanceNotFoundException e) {
+            return;
+        } catch (IOException e) {
+            throw new RuntimeException("Error subscribing to notifications of " + obj, e);
+        }
+        boundMBean.addUnbindAction(() -> {
+            try {
+                connection.removeNotificationListener(obj, listener, filter, null);
+            } catch (InstanceNotFoundException | ListenerNotFoundException | IOException ignored) {
+                // The MBean or the connection is gone, so we don't have to unregister anything
+            }
+        });
+    }
+
+    /**
+     * Registers a timer recording events of the MBean rather than an attribute, e.g. from notifications.
+     * The timer is tagged with tags of the MBean and the given ones, and is removed once meters of this MBean
+     * are unbound.
+     *
+     * @return registered timer, shared by all MBeans registering a timer with the same name and tags
+     */
+    public Timer registerTimer(String meterName, String description, Iterable<Tag> extraTags) {
+        Timer timer = Timer.builder(meterName).description(description).tags(tags).tags(extraTags).register(registry);
+        boundMBean.addMeter(registry, timer);
+        return timer;
+    }
+
+    /**
+     * Registers a counter of events of the MBean rather than an attribute, e.g. from notifications.
+     * The counter is tagged with tags of the MBean and the given ones, and is removed once meters of this MBean
+     * are unbound.
+     *
+     * @return registered counter, shared by all MBeans registering a counter with the same name and tags
+     */
+    public Counter registerCounter(String meterName, String description, String baseUnit, Iterable<Tag> extraTags) {
+        Counter counter = Counter.builder(meterName).description(description).baseUnit(baseUnit)
+                .tags(tags).tags(extraTags).register(registry);
+        boundMBean.addMeter(registry, counter);
+        return counter;
+    }
+
     public void bindGauge(String attrName, String meterName, String description) {
-        AtomicReference<Meter> meterRef = new AtomicReference<>();
-        ToDoubleFunction<BindingContext> accessor = ignored -> getAttributeValueOrUnbindMeter(registry, meterRef, obj, attrName);
-        Meter meter = Gauge.builder(meterName, this, accessor)
-                .description(description).tags(tags).register(registry);
-        meterRef.set(meter);
+        bindGauge(attrName, meterName, description, null);
+    }
+
+    public void bindGauge(String attrName, String meterName, String description, String baseUnit) {
+        int slot = snapshot.addSlot(attrName);
+        Meter meter = Gauge.builder(meterName, snapshot, new AttributeSnapshot.SlotReader(snapshot, slot))
+                .description(description).baseUnit(baseUnit).tags(tags).register(registry);
+        bindMeter(slot, meter);
     }
 
     public void bindTimeGauge(String attrName, String meterName, String description, TimeUnit timeUnit) {
-        AtomicReference<Meter> meterRef = new AtomicReference<>();
-        ToDoubleFunction<BindingContext> accessor = ignored -> getAttributeValueOrUnbindMeter(registry, meterRef, obj, attrName);
-        Meter meter = TimeGauge.builder(meterName, this, timeUnit, accessor)
+        int slot = snapshot.addSlot(attrName);
+        Meter meter = TimeGauge.builder(meterName, snapshot, timeUnit, new AttributeSnapshot.SlotReader(snapshot, slot))
                 .description(description).tags(tags).register(registry);
-        meterRef.set(meter);
+        bindMeter(slot, meter);
     }
 
     public void bindFunctionCounter(String attrName, String meterName, String description) {
-        AtomicReference<Meter> meterRef = new AtomicReference<>();
-        ToDoubleFunction<BindingContext> accessor = ignored -> getAttributeValueOrUnbindMeter(registry, meterRef, obj, attrName);
-        Meter meter = FunctionCounter.builder(meterName, this, accessor)
-                .description(description).tags(tags).register(registry);
-        meterRef.set(meter);
+        bindFunctionCounter(attrName, meterName, description, null);
+    }
+
+    public void bindFunctionCounter(String attrName, String meterName, String description, String baseUnit) {
+        int slot = snapshot.addSlot(attrName);
+        Meter meter = FunctionCounter.builder(meterName, snapshot, new AttributeSnapshot.SlotReader(snapshot, slot))
+                .description(description).baseUnit(baseUnit).tags(tags).register(registry);
+        bindMeter(slot, meter);
+    }
+
+    /**
+     * Returns a reader of an attribute without binding a meter to it, e.g. to aggregate values of several MBeans into
+     * a single meter. The attribute is read together with all other meters of the MBean, and a value that cannot be
+     * read is {@code NaN}.
+     *
+     * @param attrName name or path of the attribute
+     * @return reader of the current value of the attribute
+     */
+    public DoubleSupplier bindReader(String attrName) {
+        AttributeSnapshot.SlotReader reader = new AttributeSnapshot.SlotReader(snapshot, snapshot.addSlot(attrName));
+        return () -> reader.applyAsDouble(snapshot);
+    }
+
+    /**
+     * Binds a gauge for every row of a tabular attribute, e.g. a {@code Map} attribute of an MXBean. Gauges are tagged
+     * with index values of their rows and read together with all other meters of the MBean. Only rows present at
+     * binding time are bound, and nothing is bound if the attribute is not tabular at that time; gauges of rows that
+     * disappear later are handled like unreadable attributes.
+     *
+     * @param tablePath   name or path of the tabular attribute, e.g. {@code LastGcInfo.memoryUsageAfterGc}
+     * @param rowItemPath path of the value within a row, e.g. {@code value.used}
+     * @param tagKeys     tag keys of index values of rows, or none to use names of the index items
+     */
+    public void bindTabularGauges(String tablePath, String rowItemPath, String meterName, String description, String baseUnit, String... tagKeys) {
+        bindTabular(tablePath, rowItemPath, tagKeys, (reader, rowTags) -> Gauge.builder(meterName, snapshot, reader)
+                .description(description).baseUnit(baseUnit).tags(tags).tags(rowTags).register(registry));
+    }
+
+    /**
+     * Binds a function counter for every row of a tabular attribute. See {@link #bindTabularGauges} for details.
+     */
+    public void bindTabularFunctionCounters(String tablePath, String rowItemPath, String meterName, String description, String baseUnit, String... tagKeys) {
+        bindTabular(tablePath, rowItemPath, tagKeys, (reader, rowTags) -> FunctionCounter.builder(meterName, snapshot, reader)
+                .description(description).baseUnit(baseUnit).tags(tags).tags(rowTags).register(registry));
     }
 
-    private Double getAttributeValueOrUnbindMeter(MeterRegistry registry, AtomicReference<? extends Meter> meterRef, ObjectName obj, String attrName) {
+    private void bindTabular(String tablePath, String rowItemPath, String[] tagKeys,
+                             BiFunction<AttributeSnapshot.SlotReader, Tags, Meter> meterFactory) {
+        String[] path = AttributeSnapshot.splitPath(tablePath);
+        Object value;
         try {
-            return ((Number) mBeanServer.getAttribute(obj, attrName)).doubleValue();
-        } catch (ClassCastException | JMException e) {
-            registry.remove(meterRef.get());
-            return Double.NaN;
+            value = AttributeSnapshot.resolve(connection.getAttribute(obj, path[0]), Arrays.copyOfRange(path, 1, path.length));
+        } catch (InstanceNotFoundException e) {
+            return;
+        } catch (JMException | IOException e) {
+            throw new RuntimeException("Error reading " + tablePath + " of " + obj, e);
+        }
+        if (!(value instanceof TabularData)) {
+            return;
         }
+        String[] indexNames = ((TabularData) value).getTabularType().getIndexNames().toArray(new String[0]);
+        if (tagKeys.length != 0 && tagKeys.length != indexNames.length) {
+            throw new IllegalArgumentException("Expected " + indexNames.length + " tag keys for index "
+                    + Arrays.toString(indexNames) + " of " + tablePath);
+        }
+        String[] keys = tagKeys.length != 0 ? tagKeys : indexNames;
+        for (Object row : ((TabularData) value).values()) {
+            Object[] rowKey = ((CompositeData) row).getAll(indexNames);
+            Tags rowTags = Tags.empty();
+            for (int i = 0; i < keys.length; i++) {
+                rowTags = rowTags.and(keys[i], String.valueOf(rowKey[i]));
+            }
+            int slot = snapshot.addSlot(tablePath, rowKey, rowItemPath);
+            bindMeter(slot, meterFactory.apply(new AttributeSnapshot.SlotReader(snapshot, slot), rowTags));
+        }
+    }
+
+    private void bindMeter(int slot, Meter meter) {
+        snapshot.setMeter(slot, registry, meter);
+        boundMBean.addMeter(registry, meter);
     }
 }
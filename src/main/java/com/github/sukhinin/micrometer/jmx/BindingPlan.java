@@ -0,0 +1,248 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+/**
+ * Immutable list of attribute to meter mappings applied to every MBean of a kind. A plan is built once, either with
+ * {@link #builder()} or parsed from a text resource, and bound with {@link #bind(BindingContext)} in a single loop
+ * without building meter names or any other per-MBean setup.
+ * <p>
+ * The text format has one mapping per line, with fields separated by {@code |}:
+ * <pre>
+ * # type | attribute | meter name | unit | description
+ * gauge | records-lag | records-lag | | The latest lag of the partition.
+ * time-gauge | commit-latency-avg | commit-latency-avg | milliseconds | The average time taken for a commit request.
+ * function-counter | commit-total | commit-total | | The total number of commit calls.
+ * </pre>
+ * The unit is a {@link TimeUnit} name for time gauges and an optional base unit for other meters. Empty lines and
+ * lines starting with {@code #} are ignored.
+ */
+public final class BindingPlan {
+
+    public static final BindingPlan EMPTY = builder().build();
+
+    private final Mapping[] mappings;
+
+    private BindingPlan(Mapping[] mappings) {
+        this.mappings = mappings;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parses a plan from the text format described above.
+     *
+     * @param reader source of the plan, not closed by this method
+     * @return parsed plan
+     * @throws IOException              if reading fails
+     * @throws IllegalArgumentException if a line cannot be parsed
+     */
+    public static BindingPlan parse(Reader reader) throws IOException {
+        Builder builder = builder();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\|", 5);
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Expected 5 fields at line " + lineNumber + ": " + line);
+            }
+            String unit = fields[3].trim();
+            builder.add(parseMeterType(fields[0].trim(), lineNumber), fields[1].trim(), fields[2].trim(),
+                    fields[4].trim(), unit.isEmpty() ? null : unit);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses a plan from a UTF-8 encoded resource, e.g. {@code BindingPlan.load(getClass().getResource("/plan.txt"))}.
+     */
+    public static BindingPlan load(URL resource) throws IOException {
+        try (Reader reader = new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Returns the number of meters bound per MBean.
+     */
+    public int size() {
+        return mappings.length;
+    }
+
+    /**
+     * Returns a copy of this plan with the given prefix prepended to all meter names.
+     */
+    public BindingPlan withNamePrefix(String meterNamePrefix) {
+        Mapping[] prefixed = new Mapping[mappings.length];
+        for (int i = 0; i < mappings.length; i++) {
+            Mapping mapping = mappings[i];
+            prefixed[i] = new Mapping(mapping.type, mapping.attrName, meterNamePrefix + mapping.meterName,
+                    mapping.description, mapping.baseUnit, mapping.timeUnit);
+        }
+        return new BindingPlan(prefixed);
+    }
+
+    /**
+     * Returns a plan binding meters of this plan followed by meters of the given one.
+     */
+    public BindingPlan plus(BindingPlan other) {
+        Mapping[] combined = Arrays.copyOf(mappings, mappings.length + other.mappings.length);
+        System.arraycopy(other.mappings, 0, combined, mappings.length, other.mappings.length);
+        return new BindingPlan(combined);
+    }
+
+    /**
+     * Returns whether this plan binds a meter for the given attribute.
+     */
+    public boolean containsAttribute(String attrName) {
+        for (Mapping mapping : mappings) {
+            if (mapping.attrName.equals(attrName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of this plan with only the mappings accepted by the given predicate.
+     *
+     * @param predicate predicate accepting the meter type and attribute name of a mapping
+     * @return filtered plan
+     */
+    public BindingPlan filter(BiPredicate<MeterType, String> predicate) {
+        List<Mapping> filtered = new ArrayList<>(mappings.length);
+        for (Mapping mapping : mappings) {
+            if (predicate.test(mapping.type, mapping.attrName)) {
+                filtered.add(mapping);
+            }
+        }
+        return new BindingPlan(filtered.toArray(new Mapping[0]));
+    }
+
+    /**
+     * Binds all meters of this plan for the MBean of the given context.
+     */
+    public void bind(BindingContext ctx) {
+        for (Mapping mapping : mappings) {
+            switch (mapping.type) {
+                case GAUGE:
+                    ctx.bindGauge(mapping.attrName, mapping.meterName, mapping.description, mapping.baseUnit);
+                    break;
+                case TIME_GAUGE:
+                    ctx.bindTimeGauge(mapping.attrName, mapping.meterName, mapping.description, mapping.timeUnit);
+                    break;
+                case FUNCTION_COUNTER:
+                    ctx.bindFunctionCounter(mapping.attrName, mapping.meterName, mapping.description, mapping.baseUnit);
+                    break;
+            }
+        }
+    }
+
+    private static MeterType parseMeterType(String type, int lineNumber) {
+        try {
+            return MeterType.valueOf(type.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown meter type at line " + lineNumber + ": " + type, e);
+        }
+    }
+
+    public enum MeterType {
+        GAUGE, TIME_GAUGE, FUNCTION_COUNTER
+    }
+
+    private static final class Mapping {
+
+        private final MeterType type;
+
+        private final String attrName;
+
+        private final String meterName;
+
+        private final String description;
+
+        private final String baseUnit;
+
+        private final TimeUnit timeUnit;
+
+        private Mapping(MeterType type, String attrName, String meterName, String description, String baseUnit, TimeUnit timeUnit) {
+            this.type = type;
+            this.attrName = attrName;
+            this.meterName = meterName;
+            this.description = description;
+            this.baseUnit = baseUnit;
+            this.timeUnit = timeUnit;
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Mapping> mappings = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder gauge(String attrName, String meterName, String description) {
+            return add(MeterType.GAUGE, attrName, meterName, description, null);
+        }
+
+        public Builder timeGauge(String attrName, String meterName, String description, TimeUnit timeUnit) {
+            return add(MeterType.TIME_GAUGE, attrName, meterName, description, timeUnit.name());
+        }
+
+        public Builder functionCounter(String attrName, String meterName, String description) {
+            return add(MeterType.FUNCTION_COUNTER, attrName, meterName, description, null);
+        }
+
+        /**
+         * Adds a mapping of the given type.
+         *
+         * @param unit {@link TimeUnit} name for time gauges, optional base unit for other meters
+         * @return this builder
+         */
+        public Builder add(MeterType type, String attrName, String meterName, String description, String unit) {
+            Objects.requireNonNull(type);
+            Objects.requireNonNull(attrName);
+            Objects.requireNonNull(meterName);
+            Objects.requireNonNull(description);
+            if (type == MeterType.TIME_GAUGE) {
+                if (unit == null) {
+                    throw new IllegalArgumentException("Time unit is required for time gauge " + meterName);
+                }
+                TimeUnit timeUnit = TimeUnit.valueOf(unit.toUpperCase(Locale.ROOT));
+                mappings.add(new Mapping(type, attrName, meterName, description, null, timeUnit));
+            } else {
+                mappings.add(new Mapping(type, attrName, meterName, description, unit, null));
+            }
+            return this;
+        }
+
+        public Builder addAll(BindingPlan plan) {
+            mappings.addAll(Arrays.asList(plan.mappings));
+            return this;
+        }
+
+        public BindingPlan build() {
+            return new BindingPlan(mappings.toArray(new Mapping[0]));
+        }
+    }
+}
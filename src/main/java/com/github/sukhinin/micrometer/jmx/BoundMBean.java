@@ -0,0 +1,232 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * State shared by all binding contexts of a single MBean: tags, attribute snapshots and meters registered for it.
+ */
+class BoundMBean {
+
+    private static final Object SHARED_PREFETCH_GROUP = new Object();
+
+    private static final NotificationFilterSupport ATTRIBUTE_CHANGE_FILTER = new NotificationFilterSupport();
+
+    static {
+        ATTRIBUTE_CHANGE_FILTER.enableType(AttributeChangeNotification.ATTRIBUTE_CHANGE);
+    }
+
+    private final MBeanServerConnection connection;
+
+    private final ObjectName obj;
+
+    private final Tags tags;
+
+    private final JmxMeterBinderConfig config;
+
+    private final SnapshotPrefetcher prefetcher;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final BinderMetrics binderMetrics;
+
+    private final BinderMetrics.TypeMetrics typeMetrics;
+
+    private final AttributeSnapshot sharedSnapshot;
+
+    private final ConcurrentMap<MeterRegistry, AttributeSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<MeterRegistry, Set<Meter>> meters = new ConcurrentHashMap<>();
+
+    private final List<Runnable> unbindActions = new CopyOnWriteArrayList<>();
+
+    private final Set<Object> bindings = ConcurrentHashMap.newKeySet();
+
+    private final NotificationListener attributeChangeListener = this::handleAttributeChange;
+
+    private final AtomicBoolean attributeChangesSubscribed = new AtomicBoolean();
+
+    BoundMBean(MBeanServerConnection connection, ObjectName obj, Tags tags, JmxMeterBinderConfig config, SnapshotPrefetcher prefetcher) {
+        this(connection, obj, tags, config, prefetcher, null);
+    }
+
+    BoundMBean(MBeanServerConnection connection, ObjectName obj, Tags tags, JmxMeterBinderConfig config, SnapshotPrefetcher prefetcher,
+               BinderMetrics binderMetrics) {
+        this.connection = Objects.requireNonNull(connection);
+        this.obj = Objects.requireNonNull(obj);
+        this.tags = Objects.requireNonNull(tags);
+        this.config = Objects.requireNonNull(config);
+        this.prefetcher = prefetcher;
+        this.circuitBreaker = config.getReadTimeout().isZero() ? null : new CircuitBreaker(config);
+        this.binderMetrics = binderMetrics;
+        this.typeMetrics = binderMetrics != null ? binderMetrics.forMBean(obj) : null;
+        if (binderMetrics != null) {
+            binderMetrics.mbeanAdded();
+        }
+        // With a value cache all registries share values; otherwise values are read once per scrape of each registry
+        this.sharedSnapshot = config.getValueCacheTtl().isZero() ? null : createSnapshot(SHARED_PREFETCH_GROUP);
+    }
+
+    MBeanServerConnection getConnection() {
+        return connection;
+    }
+
+    ObjectName getObjectName() {
+        return obj;
+    }
+
+    Tags getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the circuit breaker shared by all snapshots of this MBean, or {@code null} if reads are not bounded.
+     */
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns read meters of the type of this MBean, or {@code null} if the binder is not instrumented.
+     */
+    BinderMetrics.TypeMetrics getTypeMetrics() {
+        return typeMetrics;
+    }
+
+    AttributeSnapshot getSnapshot(MeterRegistry registry) {
+        if (config.isAttributeChangeNotificationsEnabled() && attributeChangesSubscribed.compareAndSet(false, true)) {
+            subscribeToAttributeChanges();
+        }
+        if (sharedSnapshot != null) {
+            return sharedSnapshot;
+        }
+        return snapshots.computeIfAbsent(registry, this::createSnapshot);
+    }
+
+    /**
+     * Records that the given binding has been applied to this MBean.
+     *
+     * @return {@code true} if the binding has not been applied before
+     */
+    boolean markBound(Object binding) {
+        return bindings.add(binding);
+    }
+
+    void addMeter(MeterRegistry registry, Meter meter) {
+        if (meters.computeIfAbsent(registry, key -> ConcurrentHashMap.newKeySet()).add(meter) && binderMetrics != null) {
+            binderMetrics.meterAdded();
+        }
+    }
+
+    void removeMeter(MeterRegistry registry, Meter meter) {
+        Set<Meter> registryMeters = meters.get(registry);
+        if (registryMeters != null && registryMeters.remove(meter) && binderMetrics != null) {
+            binderMetrics.metersRemoved(1);
+        }
+        registry.remove(meter);
+    }
+
+    void addUnbindAction(Runnable action) {
+        unbindActions.add(action);
+    }
+
+    void removeMeters() {
+        // Unbind actions run first, so that listeners registering meters stop before meters are removed
+        for (Runnable action : unbindActions) {
+            action.run();
+        }
+        unbindActions.clear();
+        for (Map.Entry<MeterRegistry, Set<Meter>> entry : meters.entrySet()) {
+            for (Meter meter : entry.getValue()) {
+                entry.getKey().remove(meter);
+            }
+            if (binderMetrics != null) {
+                binderMetrics.metersRemoved(entry.getValue().size());
+            }
+        }
+        meters.clear();
+        if (binderMetrics != null) {
+            binderMetrics.mbeanRemoved();
+        }
+        if (prefetcher != null) {
+            if (sharedSnapshot != null) {
+                prefetcher.remove(SHARED_PREFETCH_GROUP, sharedSnapshot);
+            }
+            snapshots.forEach(prefetcher::remove);
+        }
+    }
+
+    /**
+     * Subscribes to attribute changes if the MBean declares them. MBeans that cannot be subscribed to are read
+     * like all others.
+     */
+    private void subscribeToAttributeChanges() {
+        try {
+            if (!declaresAttributeChanges()) {
+                return;
+            }
+            connection.addNotificationListener(obj, attributeChangeListener, ATTRIBUTE_CHANGE_FILTER, null);
+        } catch (JMException | IOException e) {
+            return;
+        }
+        unbindActions.add(() -> {
+            try {
+                connection.removeNotificationListener(obj, attributeChangeListener, ATTRIBUTE_CHANGE_FILTER, null);
+            } catch (InstanceNotFoundException | ListenerNotFoundException | IOException ignored) {
+                // The MBean or the connection is gone, so we don't have to unregister anything
+            }
+        });
+    }
+
+    private boolean declaresAttributeChanges() throws JMException, IOException {
+        for (MBeanNotificationInfo info : connection.getMBeanInfo(obj).getNotifications()) {
+            if (Arrays.asList(info.getNotifTypes()).contains(AttributeChangeNotification.ATTRIBUTE_CHANGE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handleAttributeChange(Notification notification, Object handback) {
+        if (!(notification instanceof AttributeChangeNotification)) {
+            return;
+        }
+        AttributeChangeNotification change = (AttributeChangeNotification) notification;
+        if (sharedSnapshot != null) {
+            sharedSnapshot.attributeChanged(change.getAttributeName(), change.getNewValue());
+        }
+        for (AttributeSnapshot snapshot : snapshots.values()) {
+            snapshot.attributeChanged(change.getAttributeName(), change.getNewValue());
+        }
+    }
+
+    private AttributeSnapshot createSnapshot(Object prefetchGroup) {
+        AttributeSnapshot snapshot = new AttributeSnapshot(this, connection, config, prefetcher, prefetchGroup);
+        if (prefetcher != null) {
+            prefetcher.add(prefetchGroup, snapshot);
+        }
+        return snapshot;
+    }
+}
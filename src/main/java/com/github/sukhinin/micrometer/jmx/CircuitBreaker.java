@@ -0,0 +1,101 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Clock;
+
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.util.concurrent.*;
+
+/**
+ * Reads attributes of a single MBean on an executor within a time budget. A read missing the budget opens the
+ * circuit: the MBean is not read again until the cool-down has passed and the read that missed the budget has
+ * completed, so a slow MBean never occupies more than one executor thread.
+ */
+class CircuitBreaker {
+
+    private final Executor executor;
+
+    private final long timeoutNanos;
+
+    private final long cooldownNanos;
+
+    private final Clock clock;
+
+    private Future<?> lateRead;
+
+    private long openedAt;
+
+    CircuitBreaker(JmxMeterBinderConfig config) {
+        this.executor = config.getReadTimeoutExecutor();
+        this.timeoutNanos = config.getReadTimeout().toNanos();
+        this.cooldownNanos = config.getCircuitBreakerCooldown().toNanos();
+        this.clock = config.getClock();
+    }
+
+    /**
+     * Returns attribute values, or {@code null} if the circuit is open or the MBean did not return them in time.
+     */
+    AttributeList getAttributes(MBeanServerConnection connection, ObjectName obj, String[] attrNames)
+            throws InstanceNotFoundException, ReflectionException, IOException {
+        if (isOpen()) {
+            return null;
+        }
+        FutureTask<AttributeList> task = new FutureTask<>(() -> connection.getAttributes(obj, attrNames));
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            return connection.getAttributes(obj, attrNames);
+        }
+        try {
+            return task.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            open(task);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            open(task);
+            return null;
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private synchronized boolean isOpen() {
+        if (lateRead == null) {
+            return false;
+        }
+        if (!lateRead.isDone() || clock.monotonicTime() - openedAt < cooldownNanos) {
+            return true;
+        }
+        lateRead = null;
+        return false;
+    }
+
+    private synchronized void open(Future<?> task) {
+        lateRead = task;
+        openedAt = clock.monotonicTime();
+    }
+
+    private static RuntimeException unwrap(Throwable cause) throws InstanceNotFoundException, ReflectionException, IOException {
+        if (cause instanceof InstanceNotFoundException) {
+            throw (InstanceNotFoundException) cause;
+        }
+        if (cause instanceof ReflectionException) {
+            throw (ReflectionException) cause;
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException(cause);
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides what happens when an MBean attribute bound to a meter cannot be read, either because the MBean is gone or
+ * failed to return attributes, or because the attribute is missing or not a number. Connection failures are not
+ * subject to the policy: they say nothing about the MBean and always result in {@code NaN}.
+ * <p>
+ * Policies count failures, removed meters and reads skipped while backing off. Counts can be published with
+ * {@link #bindTo(MeterRegistry)}. A policy instance may be shared by several binders to aggregate their counts.
+ */
+public abstract class FailurePolicy implements MeterBinder {
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder removedMeters = new LongAdder();
+
+    private final LongAdder skippedReads = new LongAdder();
+
+    /**
+     * Removes a meter as soon as its attribute cannot be read. This is the default policy.
+     */
+    public static FailurePolicy removeImmediately() {
+        return removeAfter(1);
+    }
+
+    /**
+     * Removes a meter once its attribute could not be read the given number of times in a row, reporting
+     * {@code NaN} until then. Tolerates attributes that are transiently {@code null}, e.g. while warming up.
+     */
+    public static FailurePolicy removeAfter(int consecutiveFailures) {
+        if (consecutiveFailures < 1) {
+            throw new IllegalArgumentException("Consecutive failures must be positive: " + consecutiveFailures);
+        }
+        return new FailurePolicy() {
+            @Override
+            public boolean shouldRemove(int failures) {
+                return failures >= consecutiveFailures;
+            }
+        };
+    }
+
+    /**
+     * Keeps meters and reports {@code NaN} while their attributes cannot be read. When an MBean fails to return
+     * attributes, it is not read again for a backoff period doubling with every consecutive failure, from
+     * {@code initialBackoff} up to {@code maxBackoff}.
+     */
+    public static FailurePolicy backoff(Duration initialBackoff, Duration maxBackoff) {
+        long initialNanos = initialBackoff.toNanos();
+        long maxNanos = maxBackoff.toNanos();
+        if (initialNanos <= 0 || maxNanos < initialNanos) {
+            throw new IllegalArgumentException("Invalid backoff: " + initialBackoff + " up to " + maxBackoff);
+        }
+        return new FailurePolicy() {
+            @Override
+            public boolean shouldRemove(int failures) {
+                return false;
+            }
+
+            @Override
+            public long getBackoffNanos(int failures) {
+                int shift = Math.min(failures - 1, 62);
+                long backoff = initialNanos << shift;
+                return backoff > 0 && backoff >> shift == initialNanos ? Math.min(backoff, maxNanos) : maxNanos;
+            }
+        };
+    }
+
+    /**
+     * Keeps meters and reports {@code NaN} while their attributes cannot be read.
+     */
+    public static FailurePolicy reportNaN() {
+        return new FailurePolicy() {
+            @Override
+            public boolean shouldRemove(int failures) {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns whether a meter should be removed after its attribute could not be read.
+     *
+     * @param failures number of consecutive failed reads of the attribute, including the current one
+     * @return {@code true} to remove the meter, {@code false} to report {@code NaN} and keep it
+     */
+    public abstract boolean shouldRemove(int failures);
+
+    /**
+     * Returns how long to skip reading an MBean after it failed to return attributes.
+     *
+     * @param failures number of consecutive failed reads of the MBean, including the current one
+     * @return backoff in nanoseconds, zero to read the MBean again on the next read
+     */
+    public long getBackoffNanos(int failures) {
+        return 0;
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRemovedMeterCount() {
+        return removedMeters.sum();
+    }
+
+    public long getSkippedReadCount() {
+        return skippedReads.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jmx.read.failures", failures, LongAdder::doubleValue)
+                .description("The total number of meter reads that failed because of the MBean or attribute.")
+                .register(registry);
+        FunctionCounter.builder("jmx.meters.removed", removedMeters, LongAdder::doubleValue)
+                .description("The total number of meters removed because their attribute could not be read.")
+                .register(registry);
+        FunctionCounter.builder("jmx.reads.skipped", skippedReads, LongAdder::doubleValue)
+                .description("The total number of meter reads skipped while backing off from a failing MBean.")
+                .register(registry);
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    void recordRemovedMeter() {
+        removedMeters.increment();
+    }
+
+    void recordSkippedRead() {
+        skippedReads.increment();
+    }
+}
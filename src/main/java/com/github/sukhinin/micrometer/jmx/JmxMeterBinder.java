@@ -5,11 +5,27 @@ import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
 
 import javax.management.*;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class JmxMeterBinder implements AutoCloseable {
 
@@ -19,10 +35,30 @@ public class JmxMeterBinder implements AutoCloseable {
 
     private final Iterable<Tag> tags;
 
-    private final MBeanServer mBeanServer;
+    private final MBeanServerConnection connection;
+
+    private final JmxMeterBinderConfig config;
+
+    private final SnapshotPrefetcher prefetcher;
+
+    private volatile BinderMetrics binderMetrics;
+
+    private final ConcurrentMap<ObjectName, BoundMBean> boundMBeans = new ConcurrentHashMap<>();
+
+    private final Set<ObjectName> pendingBindings = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentMap<String, List<TypeBinding>> bindingsByType = new ConcurrentHashMap<>();
+
+    private final List<PatternBinding> patternBindings = new CopyOnWriteArrayList<>();
+
+    private final NotificationListener registrationListener = this::handleMBeanServerNotification;
+
+    private final AtomicReference<FutureTask<Void>> subscription = new AtomicReference<>();
 
     private final List<Runnable> cleanupRunnables = new CopyOnWriteArrayList<>();
 
+    private final AtomicBoolean closed = new AtomicBoolean();
+
     public JmxMeterBinder(String jmxDomain, TagsExtractor tagger) {
         this(jmxDomain, tagger, Tags.empty());
     }
@@ -31,64 +67,387 @@ public class JmxMeterBinder implements AutoCloseable {
         this(jmxDomain, tagger, tags, ManagementFactory.getPlatformMBeanServer());
     }
 
-    public JmxMeterBinder(String jmxDomain, TagsExtractor tagger, Iterable<Tag> tags, MBeanServer mBeanServer) {
+    public JmxMeterBinder(String jmxDomain, TagsExtractor tagger, Iterable<Tag> tags, MBeanServerConnection connection) {
+        this(jmxDomain, tagger, tags, connection, JmxMeterBinderConfig.DEFAULT);
+    }
+
+    public JmxMeterBinder(String jmxDomain, TagsExtractor tagger, Iterable<Tag> tags, MBeanServerConnection connection, JmxMeterBinderConfig config) {
         this.jmxDomain = Objects.requireNonNull(jmxDomain);
         this.tagger = Objects.requireNonNull(tagger);
         this.tags = Objects.requireNonNull(tags);
-        this.mBeanServer = Objects.requireNonNull(mBeanServer);
+        this.connection = Objects.requireNonNull(connection);
+        this.config = Objects.requireNonNull(config);
+        this.prefetcher = config.getReadExecutor() != null ? new SnapshotPrefetcher(config.getReadExecutor()) : null;
+        this.binderMetrics = createBinderMetrics();
+    }
+
+    private BinderMetrics createBinderMetrics() {
+        return config.getSelfMetricsRegistry() != null ? BinderMetrics.acquire(config.getSelfMetricsRegistry(), jmxDomain) : null;
     }
 
     public void bindMetricsForMBeanType(MeterRegistry registry, String type, BindingCallback callback) {
         try {
-            bindMetersForExistingMBeans(registry, type, callback);
-            ensureMetersBindingForFutureMBeans(registry, type, callback);
-        } catch (OperationsException e) {
+            TypeBinding binding = ensureMetersBindingForFutureMBeans(registry, type, callback);
+            bindMetersForExistingMBeans(new ObjectName(jmxDomain + ":type=" + type + ",*"), binding);
+        } catch (OperationsException | IOException e) {
             throw new RuntimeException("Error registering Kafka JMX based metrics", e);
         }
     }
 
-    private void bindMetersForExistingMBeans(MeterRegistry registry, String type, BindingCallback callback) throws OperationsException {
-        Set<ObjectName> objects = mBeanServer.queryNames(new ObjectName(jmxDomain + ":type=" + type + ",*"), null);
+    /**
+     * Starts binding meters for several MBean types at once. Existing MBeans of all added types are found with a
+     * single query of the domain, instead of one query per type, and dispatched to callbacks by their type.
+     * A callback added more than once for the same type is invoked once per MBean.
+     *
+     * @param registry registry to bind meters to
+     * @return bulk binding to add type callbacks to and then {@link BulkBinding#bind() bind}
+     */
+    public BulkBinding bindMetricsForMBeanTypes(MeterRegistry registry) {
+        return new BulkBinding(registry);
+    }
+
+    /**
+     * Binds meters for every existing and future MBean matching the given pattern.
+     *
+     * @param registry registry to bind meters to
+     * @param pattern  object name pattern within the domain of this binder
+     * @param callback callback binding meters for a matching MBean
+     */
+    public void bindMetricsForMBeans(MeterRegistry registry, ObjectName pattern, BindingCallback callback) {
+        if (!pattern.getDomain().equals(jmxDomain)) {
+            throw new IllegalArgumentException("Pattern " + pattern + " does not belong to domain " + jmxDomain);
+        }
+        try {
+            TypeBinding binding = new TypeBinding(registry, callback);
+            patternBindings.add(new PatternBinding(pattern, binding));
+            subscribeToMBeanServerNotifications();
+            bindMetersForExistingMBeans(pattern, binding);
+        } catch (OperationsException | IOException e) {
+            throw new RuntimeException("Error registering JMX based metrics", e);
+        }
+    }
+
+    private void bindMetricsForMBeanTypes(MeterRegistry registry, Map<String, Set<BindingCallback>> callbacksByType) {
+        try {
+            Map<String, List<TypeBinding>> index = new HashMap<>();
+            for (Map.Entry<String, Set<BindingCallback>> entry : callbacksByType.entrySet()) {
+                for (BindingCallback callback : entry.getValue()) {
+                    TypeBinding binding = ensureMetersBindingForFutureMBeans(registry, entry.getKey(), callback);
+                    index.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).add(binding);
+                }
+            }
+            Set<ObjectName> objects = connection.queryNames(new ObjectName(jmxDomain + ":*"), null);
+            for (ObjectName obj : objects) {
+                String type = obj.getKeyProperty("type");
+                List<TypeBinding> bindings = type != null ? index.get(type) : null;
+                if (bindings != null) {
+                    for (TypeBinding binding : bindings) {
+                        bindMetersForMBean(obj, binding);
+                    }
+                }
+            }
+        } catch (OperationsException | IOException e) {
+            throw new RuntimeException("Error registering JMX based metrics", e);
+        }
+    }
+
+    private void bindMetersForExistingMBeans(ObjectName pattern, TypeBinding binding) throws IOException {
+        Set<ObjectName> objects = connection.queryNames(pattern, null);
         for (ObjectName obj : objects) {
-            bindMetersForMBean(registry, obj, callback);
+            bindMetersForMBean(obj, binding);
         }
     }
 
-    private void ensureMetersBindingForFutureMBeans(MeterRegistry registry, String type, BindingCallback callback) throws OperationsException {
-        NotificationListener listener = (notification, handback) -> {
-            ObjectName obj = ((MBeanServerNotification) notification).getMBeanName();
-            bindMetersForMBean(registry, obj, callback);
-        };
-        NotificationFilter filter = notification -> {
-            if (!MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
-                return false;
+    /**
+     * Registers a binding for future MBeans of the given type. This is done before existing MBeans are queried, so
+     * that MBeans registered concurrently are never missed; MBeans found both ways are bound once.
+     */
+    private TypeBinding ensureMetersBindingForFutureMBeans(MeterRegistry registry, String type, BindingCallback callback) throws InstanceNotFoundException, IOException {
+        TypeBinding binding = new TypeBinding(registry, callback);
+        bindingsByType.computeIfAbsent(type, key -> new CopyOnWriteArrayList<>()).add(binding);
+        subscribeToMBeanServerNotifications();
+        return binding;
+    }
+
+    /**
+     * Subscribes to MBean registrations once. Threads racing the first subscription wait for it to complete,
+     * so that no thread queries existing MBeans before registrations are delivered. A failed subscription is
+     * forgotten, so that the next binding tries again.
+     */
+    private void subscribeToMBeanServerNotifications() throws InstanceNotFoundException, IOException {
+        FutureTask<Void> task;
+        // The subscription of another thread may fail or be reset by close() before it is read, so only a task
+        // installed by this thread is run here
+        while ((task = subscription.get()) == null) {
+            FutureTask<Void> newTask = new FutureTask<>(this::addRegistrationListener);
+            if (subscription.compareAndSet(null, newTask)) {
+                task = newTask;
+                task.run();
+                break;
             }
-            ObjectName obj = ((MBeanServerNotification) notification).getMBeanName();
-            return obj.getDomain().equals(jmxDomain) && obj.getKeyProperty("type").equals(type);
-        };
-        mBeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+        }
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while subscribing to MBean registrations", e);
+        } catch (ExecutionException e) {
+            subscription.compareAndSet(task, null);
+            Throwable cause = e.getCause();
+            if (cause instanceof InstanceNotFoundException) {
+                throw (InstanceNotFoundException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException("Error subscribing to MBean registrations", cause);
+        }
+    }
+
+    private Void addRegistrationListener() throws InstanceNotFoundException, IOException {
+        if (closed.get()) {
+            // Binding again after close() makes the binder usable again, including its own meters
+            binderMetrics = createBinderMetrics();
+            closed.set(false);
+        }
+        MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+        filter.enableAllObjectNames();
+        connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener, filter, null);
         cleanupRunnables.add(() -> {
             try {
-                mBeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener);
-            } catch (InstanceNotFoundException | ListenerNotFoundException ignored) {
-                // The listener cannot be found, so we don't have to unregister anything
+                connection.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener);
+            } catch (InstanceNotFoundException | ListenerNotFoundException | IOException ignored) {
+                // The listener cannot be found or the connection is gone, so we don't have to unregister anything
             }
         });
+        return null;
+    }
+
+    private void handleMBeanServerNotification(Notification notification, Object handback) {
+        ObjectName obj = ((MBeanServerNotification) notification).getMBeanName();
+        if (closed.get() || !obj.getDomain().equals(jmxDomain)) {
+            return;
+        }
+        if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+            unbindMetersForMBean(obj);
+            return;
+        }
+        // Most MBeans of a domain may have no callbacks at all, which must neither take a turn on the binding
+        // executor nor be recorded as bindings
+        if (findBindings(obj).isEmpty()) {
+            return;
+        }
+        long start = binderMetrics != null ? binderMetrics.startBinding() : 0;
+        Executor executor = config.getBindingExecutor();
+        if (executor == null) {
+            bindMetersForRegisteredMBean(obj, start);
+            unbindMetersIfClosed(obj);
+        } else if (pendingBindings.add(obj)) {
+            scheduleBindingForRegisteredMBean(executor, obj, start);
+        }
+    }
+
+    private void scheduleBindingForRegisteredMBean(Executor executor, ObjectName obj, long start) {
+        try {
+            executor.execute(() -> bindMetersForQueuedMBean(obj, start));
+        } catch (RejectedExecutionException e) {
+            pendingBindings.remove(obj);
+            bindMetersForRegisteredMBean(obj, start);
+            unbindMetersIfClosed(obj);
+        }
+    }
+
+    private void bindMetersForQueuedMBean(ObjectName obj, long start) {
+        pendingBindings.remove(obj);
+        // The binder may have been closed, or the MBean may have gone away while the binding was waiting in the queue
+        if (closed.get() || !isRegistered(obj)) {
+            return;
+        }
+        try {
+            bindMetersForRegisteredMBean(obj, start);
+        } catch (RuntimeException e) {
+            // There is no caller to throw to, so the error is reported like an uncaught one without killing the thread
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+        // The unregistration of the MBean may have been handled between the check above and binding its meters,
+        // in which case nothing else would ever unbind them
+        if (closed.get() || !isRegistered(obj)) {
+            unbindMetersForMBean(obj);
+        }
+    }
+
+    /**
+     * Unbinds meters bound by a registration notification that raced with {@link #close()}.
+     */
+    private void unbindMetersIfClosed(ObjectName obj) {
+        if (closed.get()) {
+            unbindMetersForMBean(obj);
+        }
     }
 
-    private void bindMetersForMBean(MeterRegistry registry, ObjectName obj, BindingCallback callback) {
+    private boolean isRegistered(ObjectName obj) {
         try {
-            Tags tags = Tags.concat(this.tags, tagger.extract(obj));
-            callback.invoke(new BindingContext(mBeanServer, registry, obj, tags));
+            return connection.isRegistered(obj);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void bindMetersForRegisteredMBean(ObjectName obj, long start) {
+        BinderMetrics metrics = binderMetrics;
+        try {
+            bindMetersForRegisteredMBean(obj);
+        } catch (RuntimeException e) {
+            if (metrics != null) {
+                metrics.recordBindingFailure();
+            }
+            throw e;
+        } finally {
+            if (metrics != null) {
+                metrics.recordBinding(start);
+            }
+        }
+    }
+
+    private List<TypeBinding> findBindings(ObjectName obj) {
+        List<TypeBinding> bindings = new ArrayList<>();
+        String type = obj.getKeyProperty("type");
+        if (type != null) {
+            bindings.addAll(bindingsByType.getOrDefault(type, Collections.emptyList()));
+        }
+        for (PatternBinding patternBinding : patternBindings) {
+            if (patternBinding.pattern.apply(obj)) {
+                bindings.add(patternBinding.binding);
+            }
+        }
+        return bindings;
+    }
+
+    private void bindMetersForRegisteredMBean(ObjectName obj) {
+        List<TypeBinding> bindings = findBindings(obj);
+        // A failing callback must not prevent other callbacks for the same MBean from being invoked
+        RuntimeException error = null;
+        for (TypeBinding binding : bindings) {
+            try {
+                bindMetersForMBean(obj, binding);
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void bindMetersForMBean(ObjectName obj, TypeBinding binding) {
+        try {
+            // Tags are extracted once per MBean and shared by all callbacks and registries
+            BoundMBean boundMBean = boundMBeans.computeIfAbsent(obj, this::createBoundMBean);
+            // The MBean may be found both by the query of existing MBeans and by its registration notification
+            if (boundMBean.markBound(binding)) {
+                binding.callback.invoke(new BindingContext(boundMBean, binding.registry));
+            }
         } catch (Exception e) {
             throw new RuntimeException("Error invoking binding callback", e);
         }
     }
 
+    private BoundMBean createBoundMBean(ObjectName obj) {
+        return new BoundMBean(connection, obj, Tags.concat(tags, tagger.extract(obj)), config, prefetcher, binderMetrics);
+    }
+
+    private void unbindMetersForMBean(ObjectName obj) {
+        BoundMBean boundMBean = boundMBeans.remove(obj);
+        if (boundMBean != null) {
+            boundMBean.removeMeters();
+        }
+    }
+
+    /**
+     * Removes notification subscriptions and unregisters all meters created by this binder, including its own meters.
+     * Bindings are forgotten as well; binding meters again afterwards subscribes anew. Closing a closed binder has no
+     * effect.
+     */
     @Override
     public void close() {
+        // Own meters are shared with other binders of the domain, so they must be released exactly once
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
         for (Runnable runnable : cleanupRunnables) {
             runnable.run();
         }
+        cleanupRunnables.clear();
+        subscription.set(null);
+        bindingsByType.clear();
+        patternBindings.clear();
+        for (ObjectName obj : boundMBeans.keySet()) {
+            unbindMetersForMBean(obj);
+        }
+        if (binderMetrics != null) {
+            binderMetrics.release();
+        }
+    }
+
+    /**
+     * Collects type callbacks of {@link #bindMetricsForMBeanTypes(MeterRegistry)} until they are bound.
+     */
+    public final class BulkBinding {
+
+        private final MeterRegistry registry;
+
+        private final Map<String, Set<BindingCallback>> callbacksByType = new LinkedHashMap<>();
+
+        private BulkBinding(MeterRegistry registry) {
+            this.registry = Objects.requireNonNull(registry);
+        }
+
+        /**
+         * Adds a callback to be invoked for every existing and future MBean of the given type.
+         *
+         * @param type     value of the {@code type} key property
+         * @param callback callback binding meters for an MBean of the type
+         * @return this bulk binding
+         */
+        public BulkBinding add(String type, BindingCallback callback) {
+            callbacksByType.computeIfAbsent(type, key -> new LinkedHashSet<>()).add(Objects.requireNonNull(callback));
+            return this;
+        }
+
+        /**
+         * Binds meters for existing MBeans of all added types and subscribes to registrations of future ones.
+         */
+        public void bind() {
+            bindMetricsForMBeanTypes(registry, callbacksByType);
+        }
+    }
+
+    private static final class TypeBinding {
+
+        private final MeterRegistry registry;
+
+        private final BindingCallback callback;
+
+        private TypeBinding(MeterRegistry registry, BindingCallback callback) {
+            this.registry = registry;
+            this.callback = callback;
+        }
+    }
+
+    private static final class PatternBinding {
+
+        private final ObjectName pattern;
+
+        private final TypeBinding binding;
+
+        private PatternBinding(ObjectName pattern, TypeBinding binding) {
+            this.pattern = pattern;
+            this.binding = binding;
+        }
     }
 }
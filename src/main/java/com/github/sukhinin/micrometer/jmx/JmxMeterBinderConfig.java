@@ -0,0 +1,267 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Optional settings of a {@link JmxMeterBinder}. Instances are immutable and created with {@link #builder()}.
+ */
+public final class JmxMeterBinderConfig {
+
+    public static final JmxMeterBinderConfig DEFAULT = builder().build();
+
+    private final Duration valueCacheTtl;
+
+    private final Clock clock;
+
+    private final Executor bindingExecutor;
+
+    private final Executor readExecutor;
+
+    private final FailurePolicy failurePolicy;
+
+    private final Duration readTimeout;
+
+    private final Executor readTimeoutExecutor;
+
+    private final Duration circuitBreakerCooldown;
+
+    private final MeterRegistry selfMetricsRegistry;
+
+    private final boolean attributeChangeNotificationsEnabled;
+
+    private JmxMeterBinderConfig(Builder builder) {
+        this.valueCacheTtl = builder.valueCacheTtl;
+        this.clock = builder.clock;
+        this.bindingExecutor = builder.bindingExecutor;
+        this.readExecutor = builder.readExecutor;
+        this.failurePolicy = builder.failurePolicy;
+        this.readTimeout = builder.readTimeout;
+        this.readTimeoutExecutor = builder.readTimeoutExecutor;
+        this.circuitBreakerCooldown = builder.circuitBreakerCooldown;
+        this.selfMetricsRegistry = builder.selfMetricsRegistry;
+        this.attributeChangeNotificationsEnabled = builder.attributeChangeNotificationsEnabled;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the freshness window of MBean attribute values shared by all meters bound for an MBean,
+     * or {@link Duration#ZERO} if values are read once per scrape of each registry.
+     */
+    public Duration getValueCacheTtl() {
+        return valueCacheTtl;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the executor binding meters for newly registered MBeans, or {@code null} if meters are bound
+     * synchronously in the notification thread.
+     */
+    public Executor getBindingExecutor() {
+        return bindingExecutor;
+    }
+
+    /**
+     * Returns the executor reading attributes of several MBeans in parallel, or {@code null} if every MBean
+     * is read in the scraping thread when its first meter is read.
+     */
+    public Executor getReadExecutor() {
+        return readExecutor;
+    }
+
+    public FailurePolicy getFailurePolicy() {
+        return failurePolicy;
+    }
+
+    /**
+     * Returns the time budget of reading attributes of a single MBean, or {@link Duration#ZERO} if reads
+     * are not bounded.
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public Executor getReadTimeoutExecutor() {
+        return readTimeoutExecutor;
+    }
+
+    public Duration getCircuitBreakerCooldown() {
+        return circuitBreakerCooldown;
+    }
+
+    /**
+     * Returns the registry binders publish their own meters to, or {@code null} if they are not instrumented.
+     */
+    public MeterRegistry getSelfMetricsRegistry() {
+        return selfMetricsRegistry;
+    }
+
+    public boolean isAttributeChangeNotificationsEnabled() {
+        return attributeChangeNotificationsEnabled;
+    }
+
+    public static final class Builder {
+
+        private Duration valueCacheTtl = Duration.ZERO;
+
+        private Clock clock = Clock.SYSTEM;
+
+        private Executor bindingExecutor;
+
+        private Executor readExecutor;
+
+        private FailurePolicy failurePolicy = FailurePolicy.removeImmediately();
+
+        private Duration readTimeout = Duration.ZERO;
+
+        private Executor readTimeoutExecutor;
+
+        private Duration circuitBreakerCooldown = Duration.ofSeconds(30);
+
+        private MeterRegistry selfMetricsRegistry;
+
+        private boolean attributeChangeNotificationsEnabled;
+
+        private Builder() {
+        }
+
+        /**
+         * Enables sharing of MBean attribute values between all meters, registries and concurrent scrapes.
+         * Values are read at most once per given window; concurrent readers of the same MBean wait for a single
+         * in-flight read instead of issuing their own.
+         *
+         * @param ttl freshness window of attribute values, {@link Duration#ZERO} disables the cache
+         * @return this builder
+         */
+        public Builder valueCacheTtl(Duration ttl) {
+            if (ttl.isNegative()) {
+                throw new IllegalArgumentException("Value cache TTL must not be negative: " + ttl);
+            }
+            this.valueCacheTtl = ttl;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = Objects.requireNonNull(clock);
+            return this;
+        }
+
+        /**
+         * Moves binding of meters for newly registered MBeans off the thread registering the MBean.
+         * Registrations of an MBean that is already waiting to be bound are coalesced into a single binding.
+         * Use an executor with a bounded queue: when it rejects a task, meters are bound synchronously instead.
+         *
+         * @param executor executor to run binding callbacks on, {@code null} to bind synchronously
+         * @return this builder
+         */
+        public Builder bindingExecutor(Executor executor) {
+            this.bindingExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Reads attributes of several MBeans in parallel. As soon as a scrape reads the first MBean with outdated
+         * values, all other MBeans with outdated values read by the same registry are read on the executor.
+         * This is mostly useful for remote connections where every read is a network round-trip; the number of
+         * executor threads bounds the number of concurrent reads.
+         *
+         * @param executor executor to read attributes on, {@code null} to read in the scraping thread
+         * @return this builder
+         */
+        public Builder readExecutor(Executor executor) {
+            this.readExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding whether meters whose attributes cannot be read are removed, kept reporting
+         * {@code NaN}, or their MBeans are not read for a while. Defaults to {@link FailurePolicy#removeImmediately()}.
+         *
+         * @param failurePolicy policy applied to all meters of the binder
+         * @return this builder
+         */
+        public Builder failurePolicy(FailurePolicy failurePolicy) {
+            this.failurePolicy = Objects.requireNonNull(failurePolicy);
+            return this;
+        }
+
+        /**
+         * Bounds the time of reading attributes of a single MBean. Reads run on the given executor while the
+         * reading thread waits for at most the given timeout. A read missing the budget results in last known
+         * values and opens the circuit of the MBean: it is not read again, and keeps reporting last known values,
+         * until the cool-down has passed and the slow read has completed. Use an executor other than the
+         * {@link #readExecutor(Executor) read executor}; when it rejects a task, the MBean is read without a deadline.
+         *
+         * @param timeout  time budget of a read, {@link Duration#ZERO} to disable
+         * @param executor executor to run reads on
+         * @return this builder
+         */
+        public Builder readTimeout(Duration timeout, Executor executor) {
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("Read timeout must not be negative: " + timeout);
+            }
+            this.readTimeout = timeout;
+            this.readTimeoutExecutor = timeout.isZero() ? null : Objects.requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * Sets how long an MBean that missed the {@link #readTimeout(Duration, Executor) read timeout} is not read.
+         *
+         * @param cooldown cool-down of an open circuit, defaults to 30 seconds
+         * @return this builder
+         */
+        public Builder circuitBreakerCooldown(Duration cooldown) {
+            if (cooldown.isNegative()) {
+                throw new IllegalArgumentException("Circuit breaker cool-down must not be negative: " + cooldown);
+            }
+            this.circuitBreakerCooldown = cooldown;
+            return this;
+        }
+
+        /**
+         * Makes binders publish their own meters, tagged with the JMX domain of the binder: read time, number of
+         * attribute values read and failed reads per MBean type ({@code jmx.binder.read},
+         * {@code jmx.binder.attribute.reads}, {@code jmx.binder.read.failures}), the number of bound meters and
+         * MBeans ({@code jmx.binder.meters}, {@code jmx.binder.mbeans}), and the time from the registration of an
+         * MBean until its meters are bound ({@code jmx.binder.bind.latency}) as well as failed bindings of newly
+         * registered MBeans ({@code jmx.binder.bind.failures}).
+         *
+         * @param registry registry to publish binder meters to, {@code null} to disable
+         * @return this builder
+         */
+        public Builder selfMetrics(MeterRegistry registry) {
+            this.selfMetricsRegistry = registry;
+            return this;
+        }
+
+        /**
+         * Makes binders subscribe to {@link javax.management.AttributeChangeNotification}s of MBeans declaring them
+         * in their {@code MBeanInfo}. Once a change of an attribute has been received, the attribute is no longer
+         * read: its meters report the value of the latest notification. Attributes without notifications, and MBeans
+         * not emitting them, are read on every scrape as usual. Enable this only for MBeans that notify every change
+         * of their bound attributes, otherwise meters report outdated values.
+         *
+         * @param enabled whether to take attribute values from notifications
+         * @return this builder
+         */
+        public Builder attributeChangeNotifications(boolean enabled) {
+            this.attributeChangeNotificationsEnabled = enabled;
+            return this;
+        }
+
+        public JmxMeterBinderConfig build() {
+            return new JmxMeterBinderConfig(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Refreshes stale attribute snapshots of a scrape in parallel. As soon as a scrape hits the first stale snapshot,
+ * all other stale snapshots of the same group (i.e. read by the same registry) are scheduled for a refresh on the
+ * executor, whose size bounds the number of concurrent reads. Readers never wait for scheduled refreshes of other
+ * snapshots, they only block on the snapshot they read while a refresh of it is in flight.
+ * <p>
+ * The group is walked once per scrape: snapshots whose refresh has been scheduled don't walk it again when the
+ * scrape reaches them before their refresh has run, and concurrent readers don't walk it at the same time.
+ */
+class SnapshotPrefetcher {
+
+    private final Executor executor;
+
+    private final ConcurrentMap<Object, Group> groups = new ConcurrentHashMap<>();
+
+    SnapshotPrefetcher(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    void add(Object group, AttributeSnapshot snapshot) {
+        groups.computeIfAbsent(group, key -> new Group()).snapshots.add(snapshot);
+    }
+
+    void remove(Object group, AttributeSnapshot snapshot) {
+        groups.computeIfPresent(group, (key, value) -> {
+            value.snapshots.remove(snapshot);
+            return value.snapshots.isEmpty() ? null : value;
+        });
+    }
+
+    /**
+     * Schedules refreshes of stale snapshots of the group of the given reader, unless another reader is doing so.
+     * Must not be called while holding a snapshot lock.
+     */
+    void prefetch(Object group, AttributeSnapshot reader) {
+        Group value = groups.get(group);
+        if (value == null || !value.walking.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (AttributeSnapshot snapshot : value.snapshots) {
+                if (snapshot != reader && snapshot.isStale() && snapshot.tryMarkPrefetchScheduled()) {
+                    long generation = snapshot.getGeneration();
+                    try {
+                        executor.execute(() -> snapshot.prefetch(generation));
+                    } catch (RejectedExecutionException e) {
+                        snapshot.cancelPrefetch();
+                    }
+                }
+            }
+        } finally {
+            value.walking.set(false);
+        }
+    }
+
+    private static final class Group {
+
+        private final Set<AttributeSnapshot> snapshots = ConcurrentHashMap.newKeySet();
+
+        private final AtomicBoolean walking = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Tag;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out a single {@link Tag} instance per key and value, so that meters of many MBeans sharing a few
+ * tag values (e.g. partitions of the same topic) also share tag objects. At most {@code maxSize} tags are
+ * retained; once the limit is reached, tags not seen before are created without being retained.
+ */
+public final class TagInterner {
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Tag>> tagsByKey = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public TagInterner(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size must not be negative: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    public Tag intern(String key, String value) {
+        ConcurrentMap<String, Tag> tags = tagsByKey.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        Tag tag = tags.get(value);
+        if (tag != null) {
+            return tag;
+        }
+        tag = Tag.of(key, value);
+        if (size.get() >= maxSize) {
+            return tag;
+        }
+        Tag existing = tags.putIfAbsent(value, tag);
+        if (existing != null) {
+            return existing;
+        }
+        size.incrementAndGet();
+        return tag;
+    }
+}
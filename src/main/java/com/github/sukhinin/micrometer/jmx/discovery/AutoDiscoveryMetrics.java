@@ -0,0 +1,168 @@
+package com.github.sukhinin.micrometer.jmx.discovery;
+
+import com.github.sukhinin.micrometer.jmx.BindingContext;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import javax.management.*;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binds every readable numeric attribute of MBeans matching an object name pattern. Attribute lists are introspected
+ * from {@link MBeanInfo} once per MBean class name and {@code type} key property and cached, so every further MBean
+ * of the same kind only costs a {@link MBeanServerConnection#getObjectInstance(ObjectName)} call to bind.
+ * <p>
+ * Meter names are built from the prefix, the {@code type} key property and the attribute name converted to
+ * kebab case, e.g. {@code ThreadCount} of {@code java.lang:type=Threading} becomes
+ * {@code java.lang.threading.thread-count}. All other key properties become tags. Attributes whose names start or
+ * end with {@code Total} are bound as function counters, all others as gauges. Subclasses may change these rules
+ * by overriding {@link #getMeterName(ObjectName, String)} and {@link #isCounter(ObjectName, String)}.
+ */
+public class AutoDiscoveryMetrics implements MeterBinder, AutoCloseable {
+
+    private static final Set<String> NUMERIC_TYPES = new HashSet<>(Arrays.asList(
+            "byte", "short", "int", "long", "float", "double",
+            Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+            Float.class.getName(), Double.class.getName(), Number.class.getName()
+    ));
+
+    private final ObjectName pattern;
+
+    private final String meterNamePrefix;
+
+    private final MBeanServerConnection connection;
+
+    private final JmxMeterBinder binder;
+
+    private final ConcurrentMap<String, List<MBeanAttributeInfo>> attributesByKind = new ConcurrentHashMap<>();
+
+    public AutoDiscoveryMetrics(ObjectName pattern) {
+        this(pattern, Tags.empty());
+    }
+
+    public AutoDiscoveryMetrics(ObjectName pattern, Iterable<Tag> tags) {
+        this(pattern, tags, pattern.getDomain() + ".");
+    }
+
+    public AutoDiscoveryMetrics(ObjectName pattern, Iterable<Tag> tags, String meterNamePrefix) {
+        this(pattern, tags, meterNamePrefix, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public AutoDiscoveryMetrics(ObjectName pattern, Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(pattern, tags, meterNamePrefix, connection, JmxMeterBinderConfig.DEFAULT);
+    }
+
+    public AutoDiscoveryMetrics(ObjectName pattern, Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, JmxMeterBinderConfig config) {
+        if (pattern.isDomainPattern()) {
+            throw new IllegalArgumentException("Domain pattern is not supported: " + pattern);
+        }
+        this.pattern = pattern;
+        this.meterNamePrefix = meterNamePrefix;
+        this.connection = Objects.requireNonNull(connection);
+        this.binder = new JmxMeterBinder(pattern.getDomain(), AutoDiscoveryMetrics::extractTagsFromObjectName, tags, connection, config);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        binder.bindMetricsForMBeans(registry, pattern, this::bindAttributes);
+    }
+
+    @Override
+    public void close() {
+        binder.close();
+    }
+
+    /**
+     * Returns the name of the meter bound for the given attribute.
+     */
+    protected String getMeterName(ObjectName obj, String attrName) {
+        String type = obj.getKeyProperty("type");
+        return meterNamePrefix + (type != null ? toKebabCase(type) + "." : "") + toKebabCase(attrName);
+    }
+
+    /**
+     * Returns whether the given attribute is bound as a function counter rather than a gauge.
+     */
+    protected boolean isCounter(ObjectName obj, String attrName) {
+        return attrName.startsWith("Total") || attrName.endsWith("Total");
+    }
+
+    private void bindAttributes(BindingContext ctx) {
+        ObjectName obj = ctx.getObjectName();
+        List<MBeanAttributeInfo> attributes;
+        try {
+            attributes = getNumericAttributes(obj);
+        } catch (JMException | IOException e) {
+            // MBean is gone or cannot be introspected, nothing to bind
+            return;
+        }
+        for (MBeanAttributeInfo attribute : attributes) {
+            String attrName = attribute.getName();
+            String name = getMeterName(obj, attrName);
+            String description = attribute.getDescription() != null ? attribute.getDescription() : attrName;
+            if (isCounter(obj, attrName)) {
+                ctx.bindFunctionCounter(attrName, name, description);
+            } else {
+                ctx.bindGauge(attrName, name, description);
+            }
+        }
+    }
+
+    private List<MBeanAttributeInfo> getNumericAttributes(ObjectName obj) throws JMException, IOException {
+        String kind = connection.getObjectInstance(obj).getClassName() + ":" + obj.getKeyProperty("type");
+        List<MBeanAttributeInfo> attributes = attributesByKind.get(kind);
+        if (attributes == null) {
+            attributes = introspectNumericAttributes(obj);
+            attributesByKind.putIfAbsent(kind, attributes);
+        }
+        return attributes;
+    }
+
+    private List<MBeanAttributeInfo> introspectNumericAttributes(ObjectName obj) throws JMException, IOException {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (MBeanAttributeInfo attribute : connection.getMBeanInfo(obj).getAttributes()) {
+            // Dots separate items of composite attributes in binding paths, so such names cannot be bound
+            if (attribute.isReadable() && NUMERIC_TYPES.contains(attribute.getType()) && attribute.getName().indexOf('.') < 0) {
+                attributes.add(attribute);
+            }
+        }
+        return Collections.unmodifiableList(attributes);
+    }
+
+    private static Iterable<Tag> extractTagsFromObjectName(ObjectName obj) {
+        List<Tag> tags = new ArrayList<>();
+        obj.getKeyPropertyList().forEach((key, value) -> {
+            if (!key.equals("type")) {
+                tags.add(Tag.of(key, value.startsWith("\"") ? ObjectName.unquote(value) : value));
+            }
+        });
+        return tags;
+    }
+
+    private static String toKebabCase(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                // Acronyms are kept together: "HTTPRequestCount" becomes "http-request-count"
+                boolean prevUpper = i > 0 && Character.isUpperCase(name.charAt(i - 1));
+                boolean nextLower = i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1));
+                if (i > 0 && name.charAt(i - 1) != '-' && (!prevUpper || nextLower)) {
+                    sb.append('-');
+                }
+                sb.append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
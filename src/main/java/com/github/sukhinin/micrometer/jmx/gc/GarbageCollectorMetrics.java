@@ -0,0 +1,215 @@
+package com.github.sukhinin.micrometer.jmx.gc;
+
+import com.github.sukhinin.micrometer.jmx.BindingContext;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every garbage collection reported by {@code java.lang:type=GarbageCollector} MBeans. Collections are
+ * received as notifications rather than polled, so each pause is recorded with its exact duration, action and cause,
+ * and scrapes read nothing from MBeans.
+ * <p>
+ * Allocated and promoted bytes are derived from memory usage of young and old generation pools before and
+ * after each collection.
+ */
+public class GarbageCollectorMetrics implements MeterBinder, AutoCloseable {
+
+    private static final String JMX_DOMAIN = "java.lang";
+
+    private static final String DEFAULT_METER_NAME_PREFIX = "java.lang.";
+
+    private static final NotificationFilterSupport GC_NOTIFICATION_FILTER = new NotificationFilterSupport();
+
+    static {
+        GC_NOTIFICATION_FILTER.enableType(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION);
+    }
+
+    private final JmxMeterBinder binder;
+
+    private final Iterable<Tag> tags;
+
+    private final String meterNamePrefix;
+
+    private final List<MemoryAccounting> accountings = new CopyOnWriteArrayList<>();
+
+    public GarbageCollectorMetrics() {
+        this(Tags.empty());
+    }
+
+    public GarbageCollectorMetrics(Iterable<Tag> tags) {
+        this(tags, DEFAULT_METER_NAME_PREFIX);
+    }
+
+    public GarbageCollectorMetrics(Iterable<Tag> tags, String meterNamePrefix) {
+        this(tags, meterNamePrefix, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public GarbageCollectorMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(tags, meterNamePrefix, connection, JmxMeterBinderConfig.DEFAULT);
+    }
+
+    public GarbageCollectorMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, JmxMeterBinderConfig config) {
+        this.binder = new JmxMeterBinder(JMX_DOMAIN, obj -> Collections.emptyList(), tags, connection, config);
+        this.tags = tags;
+        this.meterNamePrefix = meterNamePrefix;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Memory counters and young generation usage after the previous collection are shared by all collectors of the
+        // registry, since collections of any collector move memory between the same pools
+        MemoryAccounting accounting = new MemoryAccounting(registry,
+                Counter.builder(meterNamePrefix + "gc-memory-allocated").description("Bytes allocated in the young generation between collections.")
+                        .baseUnit(BaseUnits.BYTES).tags(tags).register(registry),
+                Counter.builder(meterNamePrefix + "gc-memory-promoted").description("Bytes promoted from the young to the old generation.")
+                        .baseUnit(BaseUnits.BYTES).tags(tags).register(registry));
+        accountings.add(accounting);
+        binder.bindMetricsForMBeanType(registry, "GarbageCollector", ctx -> {
+            CollectorMeters meters = new CollectorMeters();
+            ctx.onUnbind(meters::unbind);
+            ctx.addNotificationListener((notification, handback) -> handleNotification(ctx, meters, accounting, notification), GC_NOTIFICATION_FILTER);
+        });
+    }
+
+    private void handleNotification(BindingContext ctx, CollectorMeters meters, MemoryAccounting accounting, Notification notification) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        // Timers are registered per cause, which must not happen once meters of the collector have been removed
+        synchronized (meters) {
+            if (!meters.unbound) {
+                record(ctx, meters, accounting, notification);
+            }
+        }
+    }
+
+    private void record(BindingContext ctx, CollectorMeters meters, MemoryAccounting accounting, Notification notification) {
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        List<String> key = Arrays.asList(info.getGcName(), info.getGcAction(), info.getGcCause());
+        Timer timer = meters.timers.get(key);
+        if (timer == null) {
+            timer = registerTimer(ctx, info);
+            meters.timers.put(key, timer);
+        }
+        timer.record(gcInfo.getDuration(), TimeUnit.MILLISECONDS);
+
+        accounting.record(gcInfo.getMemoryUsageBeforeGc(), gcInfo.getMemoryUsageAfterGc());
+    }
+
+    private Timer registerTimer(BindingContext ctx, GarbageCollectionNotificationInfo info) {
+        Tags gcTags = Tags.of("gc", info.getGcName(), "action", info.getGcAction(), "cause", info.getGcCause());
+        if (isConcurrentPhase(info)) {
+            return ctx.registerTimer(meterNamePrefix + "gc-concurrent-phase-time", "Time spent in concurrent phases of garbage collection.", gcTags);
+        }
+        return ctx.registerTimer(meterNamePrefix + "gc-pause", "Time spent in garbage collection pauses.", gcTags);
+    }
+
+    private static boolean isConcurrentPhase(GarbageCollectionNotificationInfo info) {
+        // Concurrent cycles of ZGC and Shenandoah are reported as collections, pauses are reported separately
+        return "No GC".equals(info.getGcCause()) || info.getGcName().endsWith(" Cycles");
+    }
+
+    @Override
+    public void close() {
+        // Collectors are unbound first, so that no notification increments memory counters once they are removed
+        binder.close();
+        for (MemoryAccounting accounting : accountings) {
+            accounting.remove();
+        }
+        accountings.clear();
+    }
+
+    /**
+     * Timers of a single collector by name, action and cause, accessed while holding the lock of this object.
+     */
+    private static final class CollectorMeters {
+
+        private final Map<List<String>, Timer> timers = new HashMap<>();
+
+        private boolean unbound;
+
+        synchronized void unbind() {
+            unbound = true;
+            timers.clear();
+        }
+    }
+
+    private static final class MemoryAccounting {
+
+        private final MeterRegistry registry;
+
+        private final Counter allocated;
+
+        private final Counter promoted;
+
+        private long youngGenUsageAfterPreviousGc;
+
+        MemoryAccounting(MeterRegistry registry, Counter allocated, Counter promoted) {
+            this.registry = registry;
+            this.allocated = allocated;
+            this.promoted = promoted;
+        }
+
+        synchronized void record(Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+            allocated.increment(allocated(before, after));
+            promoted.increment(promoted(before, after));
+        }
+
+        void remove() {
+            registry.remove(allocated);
+            registry.remove(promoted);
+        }
+
+        private long allocated(Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+            for (Map.Entry<String, MemoryUsage> entry : before.entrySet()) {
+                if (isYoungGenPool(entry.getKey())) {
+                    long allocated = entry.getValue().getUsed() - youngGenUsageAfterPreviousGc;
+                    youngGenUsageAfterPreviousGc = after.get(entry.getKey()).getUsed();
+                    return Math.max(allocated, 0);
+                }
+            }
+            return 0;
+        }
+
+        private long promoted(Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+            for (Map.Entry<String, MemoryUsage> entry : before.entrySet()) {
+                if (isOldGenPool(entry.getKey())) {
+                    return Math.max(after.get(entry.getKey()).getUsed() - entry.getValue().getUsed(), 0);
+                }
+            }
+            return 0;
+        }
+
+        private static boolean isYoungGenPool(String name) {
+            return name.endsWith("Eden Space");
+        }
+
+        private static boolean isOldGenPool(String name) {
+            return name.endsWith("Old Gen") || name.endsWith("Tenured Gen");
+        }
+    }
+}
@@ -1,96 +1,158 @@
 package com.github.sukhinin.micrometer.jmx.kafka;
 
 import com.github.sukhinin.micrometer.jmx.BindingContext;
+import com.github.sukhinin.micrometer.jmx.BindingPlan;
 import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.TagInterner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.binder.MeterBinder;
 
-import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractKafkaMetrics implements MeterBinder, AutoCloseable {
 
+    // Shared by all binders: clients of the same application mostly tag meters with the same topics and nodes
+    private static final TagInterner TAG_INTERNER = new TagInterner(100_000);
+
+    /**
+     * Common producer/consumer/connect/streams metrics.
+     *
+     * @see <a href="https://kafka.apache.org/documentation/#selector_monitoring">https://kafka.apache.org/documentation/#selector_monitoring</a>.
+     */
+    protected static final BindingPlan COMMON_PLAN = BindingPlan.builder()
+            .gauge("connection-close-rate", "connection-close-rate", "Connections closed per second in the window.")
+            .functionCounter("connection-close-total", "connection-close-total", "Total connections closed in the window.")
+            .gauge("connection-creation-rate", "connection-creation-rate", "New connections established per second in the window.")
+            .functionCounter("connection-creation-total", "connection-creation-total", "Total new connections established in the window.")
+            .gauge("network-io-rate", "network-io-rate", "The average number of network operations (reads or writes) on all connections per second.")
+            .functionCounter("network-io-total", "network-io-total", "The total number of network operations (reads or writes) on all connections.")
+            .gauge("outgoing-byte-rate", "outgoing-byte-rate", "The average number of outgoing bytes sent per second to all servers.")
+            .functionCounter("outgoing-byte-total", "outgoing-byte-total", "The total number of outgoing bytes sent to all servers.")
+            .gauge("request-rate", "request-rate", "The average number of requests sent per second.")
+            .functionCounter("request-total", "request-total", "The total number of requests sent.")
+            .gauge("request-size-avg", "request-size-avg", "The average size of all requests in the window.")
+            .gauge("request-size-max", "request-size-max", "The maximum size of any request sent in the window.")
+            .gauge("incoming-byte-rate", "incoming-byte-rate", "Bytes/second read off all sockets.")
+            .functionCounter("incoming-byte-total", "incoming-byte-total", "Total bytes read off all sockets.")
+            .gauge("response-rate", "response-rate", "Responses received per second.")
+            .functionCounter("response-total", "response-total", "Total responses received.")
+            .gauge("select-rate", "select-rate", "Number of times the I/O layer checked for new I/O to perform per second.")
+            .functionCounter("select-total", "select-total", "Total number of times the I/O layer checked for new I/O to perform.")
+            .timeGauge("io-wait-time-ns-avg", "io-wait-time-avg", "The average length of time the I/O thread spent waiting for a socket ready for reads or writes.", TimeUnit.NANOSECONDS)
+            .gauge("io-wait-ratio", "io-wait-ratio", "The fraction of time the I/O thread spent waiting.")
+            .timeGauge("io-time-ns-avg", "io-time-avg", "The average length of time for I/O per select call.", TimeUnit.NANOSECONDS)
+            .gauge("io-ratio", "io-ratio", "The fraction of time the I/O thread spent doing I/O.")
+            .gauge("connection-count", "connection-count", "The current number of active connections.")
+            .gauge("successful-authentication-rate", "successful-authentication-rate", "Connections per second that were successfully authenticated using SASL or SSL.")
+            .functionCounter("successful-authentication-total", "successful-authentication-total", "Total connections that were successfully authenticated using SASL or SSL.")
+            .gauge("failed-authentication-rate", "failed-authentication-rate", "Connections per second that failed authentication.")
+            .functionCounter("failed-authentication-total", "failed-authentication-total", "Total connections that failed authentication.")
+            .gauge("successful-reauthentication-rate", "successful-reauthentication-rate", "Connections per second that were successfully re-authenticated using SASL.")
+            .functionCounter("successful-reauthentication-total", "successful-reauthentication-total", "Total connections that were successfully re-authenticated using SASL.")
+            .timeGauge("reauthentication-latency-max", "reauthentication-latency-max", "The maximum latency observed due to re-authentication.", TimeUnit.MILLISECONDS)
+            .timeGauge("reauthentication-latency-avg", "reauthentication-latency-avg", "The average latency observed due to re-authentication.", TimeUnit.MILLISECONDS)
+            .gauge("failed-reauthentication-rate", "failed-reauthentication-rate", "Connections per second that failed re-authentication.")
+            .functionCounter("failed-reauthentication-total", "failed-reauthentication-total", "Total connections that failed re-authentication.")
+            .functionCounter("successful-authentication-no-reauth-total", "successful-authentication-no-reauth-total", "Total connections that were successfully authenticated by older, pre-2.2.0 SASL clients that do not support re-authentication.")
+            .build();
+
     protected final JmxMeterBinder binder;
 
     protected final String meterNamePrefix;
 
-    public AbstractKafkaMetrics(String jmxDomain, Iterable<Tag> tags, String meterNamePrefix, MBeanServer mBeanServer) {
-        this.binder = new JmxMeterBinder(jmxDomain, this::extractTagsFromObjectName, tags, mBeanServer);
+    protected final KafkaMetricsConfig config;
+
+    protected final Iterable<Tag> tags;
+
+    final CardinalityGuard cardinalityGuard;
+
+    private final Map<String, BindingPlan> additionalPlans = new HashMap<>();
+
+    private final ConcurrentMap<MeterRegistry, Counter> droppedMetersCounters = new ConcurrentHashMap<>();
+
+    public AbstractKafkaMetrics(String jmxDomain, Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(jmxDomain, tags, meterNamePrefix, connection, KafkaMetricsConfig.DEFAULT);
+    }
+
+    public AbstractKafkaMetrics(String jmxDomain, Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, KafkaMetricsConfig config) {
+        this.binder = new JmxMeterBinder(jmxDomain, this::extractTagsFromObjectName, tags, connection, config.getBinderConfig());
         this.meterNamePrefix = meterNamePrefix;
+        this.config = config;
+        this.cardinalityGuard = new CardinalityGuard(config);
+        this.tags = tags;
+        config.getAdditionalPlans().forEach((type, plan) -> additionalPlans.put(type, plan.withNamePrefix(meterNamePrefix)));
     }
 
     /**
-     * Binds common producer/consumer/connect/streams metrics.
+     * Adds plans added with {@link KafkaMetricsConfig.Builder#additionalPlan(String, BindingPlan)} to a bulk binding.
+     * Topic- and partition-level MBeans are subject to the same cardinality limits as built-in meters.
      *
-     * @param ctx    binding context
-     * @see <a href="https://kafka.apache.org/documentation/#selector_monitoring">https://kafka.apache.org/documentation/#selector_monitoring</a>.
+     * @param bindings bulk binding of the registry to bind meters to
+     * @return the given bulk binding
+     */
+    protected JmxMeterBinder.BulkBinding addAdditionalPlans(JmxMeterBinder.BulkBinding bindings) {
+        additionalPlans.forEach((type, plan) -> bindings.add(type, ctx -> {
+            if (cardinalityGuard.tryAcquire(ctx)) {
+                plan.bind(ctx);
+            } else {
+                reportDroppedMeters(ctx, plan.size());
+            }
+        }));
+        return bindings;
+    }
+
+    /**
+     * Accounts meters that have not been bound because of cardinality limits.
+     *
+     * @param ctx   binding context
+     * @param count number of meters not bound
      */
-    protected void bindCommonMetrics(BindingContext ctx) {
-        ctx.bindGauge("connection-close-rate", meterNamePrefix + "connection-close-rate", "Connections closed per second in the window.");
-        ctx.bindFunctionCounter("connection-close-total", meterNamePrefix + "connection-close-total", "Total connections closed in the window.");
-        ctx.bindGauge("connection-creation-rate", meterNamePrefix + "connection-creation-rate", "New connections established per second in the window.");
-        ctx.bindFunctionCounter("connection-creation-total", meterNamePrefix + "connection-creation-total", "Total new connections established in the window.");
-        ctx.bindGauge("network-io-rate", meterNamePrefix + "network-io-rate", "The average number of network operations (reads or writes) on all connections per second.");
-        ctx.bindFunctionCounter("network-io-total", meterNamePrefix + "network-io-total", "The total number of network operations (reads or writes) on all connections.");
-        ctx.bindGauge("outgoing-byte-rate", meterNamePrefix + "outgoing-byte-rate", "The average number of outgoing bytes sent per second to all servers.");
-        ctx.bindFunctionCounter("outgoing-byte-total", meterNamePrefix + "outgoing-byte-total", "The total number of outgoing bytes sent to all servers.");
-        ctx.bindGauge("request-rate", meterNamePrefix + "request-rate", "The average number of requests sent per second.");
-        ctx.bindFunctionCounter("request-total", meterNamePrefix + "request-total", "The total number of requests sent.");
-        ctx.bindGauge("request-size-avg", meterNamePrefix + "request-size-avg", "The average size of all requests in the window.");
-        ctx.bindGauge("request-size-max", meterNamePrefix + "request-size-max", "The maximum size of any request sent in the window.");
-        ctx.bindGauge("incoming-byte-rate", meterNamePrefix + "incoming-byte-rate", "Bytes/second read off all sockets.");
-        ctx.bindFunctionCounter("incoming-byte-total", meterNamePrefix + "incoming-byte-total", "Total bytes read off all sockets.");
-        ctx.bindGauge("response-rate", meterNamePrefix + "response-rate", "Responses received per second.");
-        ctx.bindFunctionCounter("response-total", meterNamePrefix + "response-total", "Total responses received.");
-        ctx.bindGauge("select-rate", meterNamePrefix + "select-rate", "Number of times the I/O layer checked for new I/O to perform per second.");
-        ctx.bindFunctionCounter("select-total", meterNamePrefix + "select-total", "Total number of times the I/O layer checked for new I/O to perform.");
-        ctx.bindTimeGauge("io-wait-time-ns-avg", meterNamePrefix + "io-wait-time-avg", "The average length of time the I/O thread spent waiting for a socket ready for reads or writes.", TimeUnit.NANOSECONDS);
-        ctx.bindGauge("io-wait-ratio", meterNamePrefix + "io-wait-ratio", "The fraction of time the I/O thread spent waiting.");
-        ctx.bindTimeGauge("io-time-ns-avg", meterNamePrefix + "io-time-avg", "The average length of time for I/O per select call.", TimeUnit.NANOSECONDS);
-        ctx.bindGauge("io-ratio", meterNamePrefix + "io-ratio", "The fraction of time the I/O thread spent doing I/O.");
-        ctx.bindGauge("connection-count", meterNamePrefix + "connection-count", "The current number of active connections.");
-        ctx.bindGauge("successful-authentication-rate", meterNamePrefix + "successful-authentication-rate", "Connections per second that were successfully authenticated using SASL or SSL.");
-        ctx.bindFunctionCounter("successful-authentication-total", meterNamePrefix + "successful-authentication-total", "Total connections that were successfully authenticated using SASL or SSL.");
-        ctx.bindGauge("failed-authentication-rate", meterNamePrefix + "failed-authentication-rate", "Connections per second that failed authentication.");
-        ctx.bindFunctionCounter("failed-authentication-total", meterNamePrefix + "failed-authentication-total", "Total connections that failed authentication.");
-        ctx.bindGauge("successful-reauthentication-rate", meterNamePrefix + "successful-reauthentication-rate", "Connections per second that were successfully re-authenticated using SASL.");
-        ctx.bindFunctionCounter("successful-reauthentication-total", meterNamePrefix + "successful-reauthentication-total", "Total connections that were successfully re-authenticated using SASL.");
-        ctx.bindTimeGauge("reauthentication-latency-max", meterNamePrefix + "reauthentication-latency-max", "The maximum latency observed due to re-authentication.", TimeUnit.MILLISECONDS);
-        ctx.bindTimeGauge("reauthentication-latency-avg", meterNamePrefix + "reauthentication-latency-avg", "The average latency observed due to re-authentication.", TimeUnit.MILLISECONDS);
-        ctx.bindGauge("failed-reauthentication-rate", meterNamePrefix + "failed-reauthentication-rate", "Connections per second that failed re-authentication.");
-        ctx.bindFunctionCounter("failed-reauthentication-total", meterNamePrefix + "failed-reauthentication-total", "Total connections that failed re-authentication.");
-        ctx.bindFunctionCounter("successful-authentication-no-reauth-total", meterNamePrefix + "successful-authentication-no-reauth-total", "Total connections that were successfully authenticated by older, pre-2.2.0 SASL clients that do not support re-authentication.");
+    protected void reportDroppedMeters(BindingContext ctx, int count) {
+        droppedMetersCounters.computeIfAbsent(ctx.getRegistry(), registry ->
+                Counter.builder(meterNamePrefix + "dropped-meters")
+                        .description("The total number of meters not bound because of cardinality limits.")
+                        .tags(tags).register(registry)
+        ).increment(count);
     }
 
     @Override
     public void close() {
         binder.close();
+        droppedMetersCounters.forEach(MeterRegistry::remove);
+        droppedMetersCounters.clear();
     }
 
     private Iterable<Tag> extractTagsFromObjectName(ObjectName obj) {
-        List<Tag> tags = new ArrayList<>();
+        List<Tag> tags = new ArrayList<>(4);
 
         String clientId = obj.getKeyProperty("client-id");
         if (clientId != null) {
-            tags.add(Tag.of("client.id", clientId));
+            tags.add(TAG_INTERNER.intern("client.id", clientId));
         }
 
         String topic = obj.getKeyProperty("topic");
         if (topic != null) {
-            tags.add(Tag.of("topic", topic));
+            tags.add(TAG_INTERNER.intern("topic", topic));
         }
 
         String partition = obj.getKeyProperty("partition");
         if (partition != null) {
-            tags.add(Tag.of("partition", partition));
+            tags.add(TAG_INTERNER.intern("partition", partition));
         }
 
         String node = obj.getKeyProperty("node");
         if (node != null) {
-            tags.add(Tag.of("node", node));
+            tags.add(TAG_INTERNER.intern("node", node));
         }
 
         return tags;
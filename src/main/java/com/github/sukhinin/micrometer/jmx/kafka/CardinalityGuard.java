@@ -0,0 +1,76 @@
+package com.github.sukhinin.micrometer.jmx.kafka;
+
+import com.github.sukhinin.micrometer.jmx.BindingContext;
+
+import javax.management.ObjectName;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of topic- and partition-level MBeans bound per client against the limits of {@link KafkaMetricsConfig}.
+ */
+class CardinalityGuard {
+
+    private final KafkaMetricsConfig config;
+
+    private final ConcurrentMap<String, Set<ObjectName>> partitionsByClient = new ConcurrentHashMap<>();
+
+    CardinalityGuard(KafkaMetricsConfig config) {
+        this.config = Objects.requireNonNull(config);
+    }
+
+    boolean isTopicAllowed(BindingContext ctx) {
+        String topic = ctx.getObjectName().getKeyProperty("topic");
+        return topic == null || config.getTopicFilter().test(topic);
+    }
+
+    /**
+     * Checks an MBean of any level against the limits, accounting it if it is partition-level.
+     *
+     * @param ctx binding context
+     * @return {@code true} if meters should be bound for the MBean
+     */
+    boolean tryAcquire(BindingContext ctx) {
+        if (ctx.getObjectName().getKeyProperty("partition") != null) {
+            return tryAcquirePartition(ctx);
+        }
+        return isTopicAllowed(ctx);
+    }
+
+    /**
+     * Accounts a partition-level MBean against the per-client partition limit.
+     *
+     * @param ctx binding context of a partition-level MBean
+     * @return {@code true} if partition-level meters should be bound for the MBean
+     */
+    boolean tryAcquirePartition(BindingContext ctx) {
+        if (!isTopicAllowed(ctx)) {
+            return false;
+        }
+        ObjectName obj = ctx.getObjectName();
+        String clientId = Objects.toString(obj.getKeyProperty("client-id"), "");
+        boolean[] acquired = new boolean[1];
+        partitionsByClient.compute(clientId, (key, partitions) -> {
+            Set<ObjectName> result = partitions != null ? partitions : new HashSet<>();
+            if (result.contains(obj) || result.size() < config.getMaxPartitionsPerClient()) {
+                result.add(obj);
+                acquired[0] = true;
+            }
+            return result.isEmpty() ? null : result;
+        });
+        if (acquired[0]) {
+            ctx.onUnbind(() -> release(clientId, obj));
+        }
+        return acquired[0];
+    }
+
+    private void release(String clientId, ObjectName obj) {
+        partitionsByClient.computeIfPresent(clientId, (key, partitions) -> {
+            partitions.remove(obj);
+            return partitions.isEmpty() ? null : partitions;
+        });
+    }
+}
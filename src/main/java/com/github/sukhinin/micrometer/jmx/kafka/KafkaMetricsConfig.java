@@ -0,0 +1,168 @@
+package com.github.sukhinin.micrometer.jmx.kafka;
+
+import com.github.sukhinin.micrometer.jmx.BindingPlan;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Optional settings of Kafka meter binders. Instances are immutable and created with {@link #builder()}.
+ */
+public final class KafkaMetricsConfig {
+
+    public static final KafkaMetricsConfig DEFAULT = builder().build();
+
+    private final JmxMeterBinderConfig binderConfig;
+
+    private final int maxPartitionsPerClient;
+
+    private final Predicate<String> topicFilter;
+
+    private final boolean topicLagAggregationEnabled;
+
+    private final Map<String, BindingPlan> additionalPlans;
+
+    private final KafkaMetricsProfile profile;
+
+    private KafkaMetricsConfig(Builder builder) {
+        this.binderConfig = builder.binderConfig;
+        this.maxPartitionsPerClient = builder.maxPartitionsPerClient;
+        this.topicFilter = builder.topicFilter;
+        this.topicLagAggregationEnabled = builder.topicLagAggregationEnabled;
+        this.additionalPlans = Collections.unmodifiableMap(new LinkedHashMap<>(builder.additionalPlans));
+        this.profile = builder.profile;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public JmxMeterBinderConfig getBinderConfig() {
+        return binderConfig;
+    }
+
+    /**
+     * Returns the maximum number of partitions per client to bind partition-level meters for.
+     */
+    public int getMaxPartitionsPerClient() {
+        return maxPartitionsPerClient;
+    }
+
+    /**
+     * Returns the predicate selecting topics to bind topic- and partition-level meters for.
+     */
+    public Predicate<String> getTopicFilter() {
+        return topicFilter;
+    }
+
+    public boolean isTopicLagAggregationEnabled() {
+        return topicLagAggregationEnabled;
+    }
+
+    /**
+     * Returns plans to bind in addition to built-in meters, keyed by MBean type.
+     */
+    public Map<String, BindingPlan> getAdditionalPlans() {
+        return additionalPlans;
+    }
+
+    public KafkaMetricsProfile getProfile() {
+        return profile;
+    }
+
+    public static final class Builder {
+
+        private JmxMeterBinderConfig binderConfig = JmxMeterBinderConfig.DEFAULT;
+
+        private int maxPartitionsPerClient = Integer.MAX_VALUE;
+
+        private Predicate<String> topicFilter = topic -> true;
+
+        private boolean topicLagAggregationEnabled;
+
+        private final Map<String, BindingPlan> additionalPlans = new LinkedHashMap<>();
+
+        private KafkaMetricsProfile profile = KafkaMetricsProfile.FULL;
+
+        private Builder() {
+        }
+
+        public Builder binderConfig(JmxMeterBinderConfig binderConfig) {
+            this.binderConfig = Objects.requireNonNull(binderConfig);
+            return this;
+        }
+
+        /**
+         * Limits the number of partitions per client that partition-level meters are bound for.
+         * Partitions over the limit are only accounted for by topic-level meters.
+         *
+         * @param maxPartitionsPerClient maximum number of partitions per client
+         * @return this builder
+         */
+        public Builder maxPartitionsPerClient(int maxPartitionsPerClient) {
+            if (maxPartitionsPerClient < 0) {
+                throw new IllegalArgumentException("Max partitions per client must not be negative: " + maxPartitionsPerClient);
+            }
+            this.maxPartitionsPerClient = maxPartitionsPerClient;
+            return this;
+        }
+
+        /**
+         * Selects topics that topic- and partition-level meters are bound for. Topics not matching
+         * the filter are only accounted for by client-level meters.
+         *
+         * @param topicFilter predicate accepting topic names, e.g. {@code allowedTopics::contains}
+         * @return this builder
+         */
+        public Builder topicFilter(Predicate<String> topicFilter) {
+            this.topicFilter = Objects.requireNonNull(topicFilter);
+            return this;
+        }
+
+        /**
+         * Enables consumer lag gauges aggregated per client and topic. Combined with
+         * {@link #maxPartitionsPerClient(int)} set to zero this replaces partition-level lag meters.
+         *
+         * @param enabled whether to publish topic-level lag sum and max
+         * @return this builder
+         */
+        public Builder topicLagAggregation(boolean enabled) {
+            this.topicLagAggregationEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Binds meters of the given plan for every MBean of the given type, in addition to built-in meters.
+         * Meter names of the plan are prefixed with the meter name prefix of the binder. This allows binding
+         * metrics added in newer Kafka versions without waiting for a release of this library.
+         *
+         * @param mbeanType value of the {@code type} key property, e.g. {@code consumer-fetch-manager-metrics}
+         * @param plan      plan to bind
+         * @return this builder
+         */
+        public Builder additionalPlan(String mbeanType, BindingPlan plan) {
+            additionalPlans.merge(Objects.requireNonNull(mbeanType), Objects.requireNonNull(plan), BindingPlan::plus);
+            return this;
+        }
+
+        /**
+         * Selects the subset of built-in meters to bind, e.g. {@link KafkaMetricsProfile#STANDARD} to leave out
+         * rate gauges of events that are also counted. Defaults to {@link KafkaMetricsProfile#FULL}.
+         *
+         * @param profile subset of built-in meters to bind
+         * @return this builder
+         */
+        public Builder profile(KafkaMetricsProfile profile) {
+            this.profile = Objects.requireNonNull(profile);
+            return this;
+        }
+
+        public KafkaMetricsConfig build() {
+            return new KafkaMetricsConfig(this);
+        }
+    }
+}
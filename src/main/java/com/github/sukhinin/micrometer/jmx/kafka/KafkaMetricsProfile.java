@@ -0,0 +1,82 @@
+package com.github.sukhinin.micrometer.jmx.kafka;
+
+import com.github.sukhinin.micrometer.jmx.BindingPlan;
+import com.github.sukhinin.micrometer.jmx.BindingPlan.MeterType;
+
+/**
+ * Subsets of built-in Kafka meters to bind. Leaving meters out at binding time saves both the series and
+ * the attribute reads, unlike registry-level meter filters which only apply after meters have been bound.
+ * Plans added with {@link KafkaMetricsConfig.Builder#additionalPlan(String, BindingPlan)} are always bound in full.
+ */
+public enum KafkaMetricsProfile {
+
+    /**
+     * All built-in meters. This is the default profile.
+     */
+    FULL {
+        @Override
+        BindingPlan select(BindingPlan plan) {
+            return plan;
+        }
+    },
+
+    /**
+     * All built-in meters except rate gauges of events also counted by a total counter of the same MBean,
+     * e.g. {@code request-rate} next to {@code request-total}. Rates are derived from counters by most backends.
+     */
+    STANDARD {
+        @Override
+        BindingPlan select(BindingPlan plan) {
+            return plan.filter((type, attrName) -> !isRedundantRate(plan, type, attrName));
+        }
+    },
+
+    /**
+     * Counters and gauges of the current state, such as {@code records-lag}, {@code assigned-partitions},
+     * {@code connection-count} or maximums and minimums over the sample window, e.g. {@code records-lead-min}.
+     * Only windowed rates ({@code -rate}, {@code -rate-per-hour}), ratios ({@code -ratio}) and averages
+     * ({@code -avg}) are left out.
+     */
+    MINIMAL {
+        @Override
+        BindingPlan select(BindingPlan plan) {
+            return plan.filter((type, attrName) -> type == MeterType.FUNCTION_COUNTER || !isWindowedStatistic(attrName));
+        }
+    },
+
+    /**
+     * Only counters of events. Consumer lag and other gauges are left out, which suits applications publishing
+     * lag with {@link KafkaMetricsConfig.Builder#topicLagAggregation(boolean)} or not at all.
+     */
+    COUNTERS_ONLY {
+        @Override
+        BindingPlan select(BindingPlan plan) {
+            return plan.filter((type, attrName) -> type == MeterType.FUNCTION_COUNTER);
+        }
+    };
+
+    /**
+     * Returns the subset of the given built-in plan bound with this profile.
+     */
+    abstract BindingPlan select(BindingPlan plan);
+
+    private static boolean isRedundantRate(BindingPlan plan, MeterType type, String attrName) {
+        if (type != MeterType.GAUGE) {
+            return false;
+        }
+        String total;
+        if (attrName.endsWith("-rate")) {
+            total = attrName.substring(0, attrName.length() - "-rate".length()) + "-total";
+        } else if (attrName.endsWith("-rate-per-hour")) {
+            total = attrName.substring(0, attrName.length() - "-rate-per-hour".length()) + "-total";
+        } else {
+            return false;
+        }
+        return plan.containsAttribute(total);
+    }
+
+    private static boolean isWindowedStatistic(String attrName) {
+        return attrName.endsWith("-rate") || attrName.endsWith("-rate-per-hour") || attrName.endsWith("-ratio")
+                || attrName.endsWith("-avg");
+    }
+}
@@ -1,12 +1,14 @@
 package com.github.sukhinin.micrometer.jmx.kafka;
 
 import com.github.sukhinin.micrometer.jmx.BindingContext;
-import com.github.sukhinin.micrometer.jmx.TagsUtil;
+import com.github.sukhinin.micrometer.jmx.BindingPlan;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
 
-import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
 import java.lang.management.ManagementFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -16,6 +18,63 @@ public class KafkaProducerMetrics extends AbstractKafkaMetrics {
 
     private static final String DEFAULT_METER_NAME_PREFIX = "kafka.producer.";
 
+    /**
+     * Producer-specific metrics.
+     *
+     * @see <a href="https://kafka.apache.org/documentation/#producer_monitoring">https://kafka.apache.org/documentation/#producer_monitoring</a>.
+     */
+    private static final BindingPlan PRODUCER_PLAN = BindingPlan.builder()
+            .gauge("waiting-threads", "waiting-threads", "The number of user threads blocked waiting for buffer memory to enqueue their records.")
+            .gauge("buffer-total-bytes", "buffer-total-bytes", "The maximum amount of buffer memory the client can use (whether or not it is currently used).")
+            .gauge("buffer-available-bytes", "buffer-available-bytes", "The total amount of buffer memory that is not being used (either unallocated or in the free list).")
+            .gauge("bufferpool-wait-time", "bufferpool-wait-time", "The fraction of time an appender waits for space allocation.")
+            .build();
+
+    /**
+     * Per-client producer sender metrics.
+     *
+     * @see <a href="https://kafka.apache.org/documentation/#producer_sender_monitoring">https://kafka.apache.org/documentation/#producer_sender_monitoring</a>.
+     */
+    private static final BindingPlan SENDER_PLAN = BindingPlan.builder()
+            .gauge("batch-size-avg", "batch-size-avg", "The average number of bytes sent per partition per-request.")
+            .gauge("batch-size-max", "batch-size-max", "The max number of bytes sent per partition per-request.")
+            .gauge("batch-split-rate", "batch-split-rate", "The average number of batch splits per second.")
+            .functionCounter("batch-split-total", "batch-split-total", "The total number of batch splits.")
+            .gauge("compression-rate-avg", "compression-rate-avg", "The average compression rate of record batches.")
+            .timeGauge("metadata-age", "metadata-age", "The age of the current producer metadata being used.", TimeUnit.SECONDS)
+            .timeGauge("produce-throttle-time-avg", "produce-throttle-time-avg", "The average time a request was throttled by a broker.", TimeUnit.MILLISECONDS)
+            .timeGauge("produce-throttle-time-max", "produce-throttle-time-max", "The maximum time a request was throttled by a broker.", TimeUnit.MILLISECONDS)
+            .timeGauge("record-queue-time-avg", "record-queue-time-avg", "The average time record batches spent in the send buffer.", TimeUnit.MILLISECONDS)
+            .timeGauge("record-queue-time-max", "record-queue-time-max", "The maximum time record batches spent in the send buffer.", TimeUnit.MILLISECONDS)
+            .gauge("record-size-avg", "record-size-avg", "The average record size.")
+            .gauge("record-size-max", "record-size-max", "The maximum record size.")
+            .gauge("records-per-request-avg", "records-per-request-avg", "The average number of records per request.")
+            .timeGauge("request-latency-avg", "request-latency-avg", "The average request latency.", TimeUnit.MILLISECONDS)
+            .timeGauge("request-latency-max", "request-latency-max", "The maximum request latency.", TimeUnit.MILLISECONDS)
+            .gauge("requests-in-flight", "requests-in-flight", "The current number of in-flight requests awaiting a response.")
+            .build();
+
+    /**
+     * Per-topic producer sender metrics.
+     *
+     * @see <a href="https://kafka.apache.org/documentation/#producer_sender_monitoring">https://kafka.apache.org/documentation/#producer_sender_monitoring</a>.
+     */
+    private static final BindingPlan TOPIC_SENDER_PLAN = BindingPlan.builder()
+            .gauge("byte-rate", "byte-rate", "The average number of bytes sent per second for a topic.")
+            .functionCounter("byte-total", "byte-total", "The total number of bytes sent for a topic.")
+            .gauge("compression-rate", "compression-rate", "The average compression rate of record batches for a topic.")
+            .gauge("record-error-rate", "record-error-rate", "The average per-second number of record sends that resulted in errors for a topic.")
+            .functionCounter("record-error-total", "record-error-total", "The total number of record sends that resulted in errors for a topic.")
+            .gauge("record-retry-rate", "record-retry-rate", "The average per-second number of retried record sends for a topic.")
+            .functionCounter("record-retry-total", "record-retry-total", "The total number of retried record sends for a topic.")
+            .gauge("record-send-rate", "record-send-rate", "The average number of records sent per second for a topic.")
+            .functionCounter("record-send-total", "record-send-total", "The total number of records sent for a topic.")
+            .build();
+
+    private final BindingPlan clientPlan;
+
+    private final BindingPlan topicPlan;
+
     public KafkaProducerMetrics() {
         this(Tags.empty());
     }
@@ -28,71 +87,34 @@ public class KafkaProducerMetrics extends AbstractKafkaMetrics {
         this(tags, meterNamePrefix, ManagementFactory.getPlatformMBeanServer());
     }
 
-    public KafkaProducerMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServer mBeanServer) {
-        super(JMX_DOMAIN, tags, meterNamePrefix, mBeanServer);
+    public KafkaProducerMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(tags, meterNamePrefix, connection, JmxMeterBinderConfig.DEFAULT);
     }
 
-    @Override
-    public void bindTo(MeterRegistry registry) {
-        binder.bindMetricsForMBeanType(registry, "producer-metrics", this::bindCommonMetrics);
-        binder.bindMetricsForMBeanType(registry, "producer-metrics", this::bindProducerMetrics);
-        binder.bindMetricsForMBeanType(registry, "producer-metrics", this::bindSenderMetrics);
-        binder.bindMetricsForMBeanType(registry, "producer-topic-metrics", this::bindPerTopicSenderMetrics);
+    public KafkaProducerMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, JmxMeterBinderConfig config) {
+        this(tags, meterNamePrefix, connection, KafkaMetricsConfig.builder().binderConfig(config).build());
     }
 
-    /**
-     * Binds producer-specific metrics.
-     *
-     * @param ctx binding context
-     * @see <a href="https://kafka.apache.org/documentation/#producer_monitoring">https://kafka.apache.org/documentation/#producer_monitoring</a>.
-     */
-    private void bindProducerMetrics(BindingContext ctx) {
-        ctx.bindGauge("waiting-threads", meterNamePrefix + "waiting-threads", "The number of user threads blocked waiting for buffer memory to enqueue their records.");
-        ctx.bindGauge("buffer-total-bytes", meterNamePrefix + "buffer-total-bytes", "The maximum amount of buffer memory the client can use (whether or not it is currently used).");
-        ctx.bindGauge("buffer-available-bytes", meterNamePrefix + "buffer-available-bytes", "The total amount of buffer memory that is not being used (either unallocated or in the free list).");
-        ctx.bindGauge("bufferpool-wait-time", meterNamePrefix + "bufferpool-wait-time", "The fraction of time an appender waits for space allocation.");
+    public KafkaProducerMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, KafkaMetricsConfig config) {
+        super(JMX_DOMAIN, tags, meterNamePrefix, connection, config);
+        KafkaMetricsProfile profile = config.getProfile();
+        this.clientPlan = profile.select(COMMON_PLAN.plus(PRODUCER_PLAN).plus(SENDER_PLAN)).withNamePrefix(meterNamePrefix);
+        this.topicPlan = profile.select(TOPIC_SENDER_PLAN).withNamePrefix(meterNamePrefix);
     }
 
-    /**
-     * Binds per-client producer sender metrics.
-     *
-     * @param ctx binding context
-     * @see <a href="https://kafka.apache.org/documentation/#producer_sender_monitoring">https://kafka.apache.org/documentation/#producer_sender_monitoring</a>.
-     */
-    private void bindSenderMetrics(BindingContext ctx) {
-        ctx.bindGauge("batch-size-avg", meterNamePrefix + "batch-size-avg", "The average number of bytes sent per partition per-request.");
-        ctx.bindGauge("batch-size-max", meterNamePrefix + "batch-size-max", "The max number of bytes sent per partition per-request.");
-        ctx.bindGauge("batch-split-rate", meterNamePrefix + "batch-split-rate", "The average number of batch splits per second.");
-        ctx.bindFunctionCounter("batch-split-total", meterNamePrefix + "batch-split-total", "The total number of batch splits.");
-        ctx.bindGauge("compression-rate-avg", meterNamePrefix + "compression-rate-avg", "The average compression rate of record batches.");
-        ctx.bindTimeGauge("metadata-age", meterNamePrefix + "metadata-age", "The age of the current producer metadata being used.", TimeUnit.SECONDS);
-        ctx.bindTimeGauge("produce-throttle-time-avg", meterNamePrefix + "produce-throttle-time-avg", "The average time a request was throttled by a broker.", TimeUnit.MILLISECONDS);
-        ctx.bindTimeGauge("produce-throttle-time-max", meterNamePrefix + "produce-throttle-time-max", "The maximum time a request was throttled by a broker.", TimeUnit.MILLISECONDS);
-        ctx.bindTimeGauge("record-queue-time-avg", meterNamePrefix + "record-queue-time-avg", "The average time record batches spent in the send buffer.", TimeUnit.MILLISECONDS);
-        ctx.bindTimeGauge("record-queue-time-max", meterNamePrefix + "record-queue-time-max", "The maximum time record batches spent in the send buffer.", TimeUnit.MILLISECONDS);
-        ctx.bindGauge("record-size-avg", meterNamePrefix + "record-size-avg", "The average record size.");
-        ctx.bindGauge("record-size-max", meterNamePrefix + "record-size-max", "The maximum record size.");
-        ctx.bindGauge("records-per-request-avg", meterNamePrefix + "records-per-request-avg", "The average number of records per request.");
-        ctx.bindTimeGauge("request-latency-avg", meterNamePrefix + "request-latency-avg", "The average request latency.", TimeUnit.MILLISECONDS);
-        ctx.bindTimeGauge("request-latency-max", meterNamePrefix + "request-latency-max", "The maximum request latency.", TimeUnit.MILLISECONDS);
-        ctx.bindGauge("requests-in-flight", meterNamePrefix + "requests-in-flight", "The current number of in-flight requests awaiting a response.");
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        JmxMeterBinder.BulkBinding bindings = binder.bindMetricsForMBeanTypes(registry)
+                .add("producer-metrics", clientPlan::bind)
+                .add("producer-topic-metrics", this::bindPerTopicSenderMetrics);
+        addAdditionalPlans(bindings).bind();
     }
 
-    /**
-     * Binds per-topic producer sender metrics.
-     *
-     * @param ctx binding context
-     * @see <a href="https://kafka.apache.org/documentation/#producer_sender_monitoring">https://kafka.apache.org/documentation/#producer_sender_monitoring</a>.
-     */
     private void bindPerTopicSenderMetrics(BindingContext ctx) {
-        ctx.bindGauge("byte-rate", meterNamePrefix + "byte-rate", "The average number of bytes sent per second for a topic.");
-        ctx.bindFunctionCounter("byte-total", meterNamePrefix + "byte-total", "The total number of bytes sent for a topic.");
-        ctx.bindGauge("compression-rate", meterNamePrefix + "compression-rate", "The average compression rate of record batches for a topic.");
-        ctx.bindGauge("record-error-rate", meterNamePrefix + "record-error-rate", "The average per-second number of record sends that resulted in errors for a topic.");
-        ctx.bindFunctionCounter("record-error-total", meterNamePrefix + "record-error-total", "The total number of record sends that resulted in errors for a topic.");
-        ctx.bindGauge("record-retry-rate", meterNamePrefix + "record-retry-rate", "The average per-second number of retried record sends for a topic.");
-        ctx.bindFunctionCounter("record-retry-total", meterNamePrefix + "record-retry-total", "The total number of retried record sends for a topic.");
-        ctx.bindGauge("record-send-rate", meterNamePrefix + "record-send-rate", "The average number of records sent per second for a topic.");
-        ctx.bindFunctionCounter("record-send-total", meterNamePrefix + "record-send-total", "The total number of records sent for a topic.");
+        if (!cardinalityGuard.isTopicAllowed(ctx)) {
+            reportDroppedMeters(ctx, topicPlan.size());
+            return;
+        }
+        topicPlan.bind(ctx);
     }
 }
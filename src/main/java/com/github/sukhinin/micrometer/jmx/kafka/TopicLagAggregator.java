@@ -0,0 +1,127 @@
+package com.github.sukhinin.micrometer.jmx.kafka;
+
+import com.github.sukhinin.micrometer.jmx.BindingContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+
+import javax.management.ObjectName;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Publishes consumer records lag aggregated per client and topic from partition-level fetch manager MBeans.
+ * Rows are added and removed as partitions get assigned and revoked. Lag of a partition is read along with all other
+ * meters of its MBean, so it is cached, prefetched and bounded by the read timeout just like them.
+ */
+class TopicLagAggregator {
+
+    private final MultiGauge sumGauge;
+
+    private final MultiGauge maxGauge;
+
+    private final Map<Tags, TopicLag> topics = new HashMap<>();
+
+    TopicLagAggregator(MeterRegistry registry, String meterNamePrefix, Iterable<Tag> tags) {
+        this.sumGauge = MultiGauge.builder(meterNamePrefix + "topic.records-lag-sum")
+                .description("The sum of the latest lag of all assigned partitions of the topic.")
+                .tags(tags).register(registry);
+        this.maxGauge = MultiGauge.builder(meterNamePrefix + "topic.records-lag-max")
+                .description("The max of the latest lag of all assigned partitions of the topic.")
+                .tags(tags).register(registry);
+    }
+
+    synchronized void addPartition(BindingContext ctx) {
+        ObjectName obj = ctx.getObjectName();
+        Tags key = getTopicKey(obj);
+        TopicLag topicLag = topics.get(key);
+        if (topicLag == null) {
+            topicLag = new TopicLag();
+            topics.put(key, topicLag);
+            registerRows();
+        }
+        if (!topicLag.partitions.containsKey(obj)) {
+            topicLag.partitions.put(obj, ctx.bindReader("records-lag"));
+            ctx.onUnbind(() -> removePartition(obj));
+        }
+    }
+
+    synchronized void close() {
+        topics.clear();
+        registerRows();
+    }
+
+    private synchronized void removePartition(ObjectName obj) {
+        Tags key = getTopicKey(obj);
+        TopicLag topicLag = topics.get(key);
+        if (topicLag != null && topicLag.partitions.remove(obj) != null && topicLag.partitions.isEmpty()) {
+            topics.remove(key);
+            registerRows();
+        }
+    }
+
+    private void registerRows() {
+        List<MultiGauge.Row<?>> sumRows = new ArrayList<>(topics.size());
+        List<MultiGauge.Row<?>> maxRows = new ArrayList<>(topics.size());
+        for (Map.Entry<Tags, TopicLag> entry : topics.entrySet()) {
+            sumRows.add(MultiGauge.Row.of(entry.getKey(), entry.getValue(), TopicLag::sum));
+            maxRows.add(MultiGauge.Row.of(entry.getKey(), entry.getValue(), TopicLag::max));
+        }
+        sumGauge.register(sumRows);
+        maxGauge.register(maxRows);
+    }
+
+    private static Tags getTopicKey(ObjectName obj) {
+        String clientId = Objects.toString(obj.getKeyProperty("client-id"), "");
+        String topic = Objects.toString(obj.getKeyProperty("topic"), "");
+        return Tags.of("client.id", clientId, "topic", topic);
+    }
+
+    private static class TopicLag {
+
+        private final Map<ObjectName, DoubleSupplier> partitions = new ConcurrentHashMap<>();
+
+        private boolean sumConsumed = true;
+
+        private boolean maxConsumed = true;
+
+        private double sum;
+
+        private double max;
+
+        synchronized double sum() {
+            if (sumConsumed) {
+                refresh();
+            }
+            sumConsumed = true;
+            return sum;
+        }
+
+        synchronized double max() {
+            if (maxConsumed) {
+                refresh();
+            }
+            maxConsumed = true;
+            return max;
+        }
+
+        // Reads lag of all partitions once for both the sum and the max row
+        private void refresh() {
+            double newSum = 0.0;
+            double newMax = Double.NaN;
+            for (DoubleSupplier reader : partitions.values()) {
+                double lag = reader.getAsDouble();
+                if (!Double.isNaN(lag)) {
+                    newSum += lag;
+                    newMax = Double.isNaN(newMax) ? lag : Math.max(newMax, lag);
+                }
+            }
+            sum = Double.isNaN(newMax) ? Double.NaN : newSum;
+            max = newMax;
+            sumConsumed = false;
+            maxConsumed = false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.sukhinin.micrometer.jmx.memory;
+
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Binds usage of direct and mapped buffer pools reported by {@code java.nio:type=BufferPool} MBeans.
+ */
+public class BufferPoolMetrics implements MeterBinder, AutoCloseable {
+
+    private static final String JMX_DOMAIN = "java.nio";
+
+    private static final String DEFAULT_METER_NAME_PREFIX = "java.nio.";
+
+    private final JmxMeterBinder binder;
+
+    private final String meterNamePrefix;
+
+    public BufferPoolMetrics() {
+        this(Tags.empty());
+    }
+
+    public BufferPoolMetrics(Iterable<Tag> tags) {
+        this(tags, DEFAULT_METER_NAME_PREFIX);
+    }
+
+    public BufferPoolMetrics(Iterable<Tag> tags, String meterNamePrefix) {
+        this(tags, meterNamePrefix, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public BufferPoolMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(tags, meterNamePrefix, connection, JmxMeterBinderConfig.DEFAULT);
+    }
+
+    public BufferPoolMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, JmxMeterBinderConfig config) {
+        this.binder = new JmxMeterBinder(JMX_DOMAIN, BufferPoolMetrics::extractTags, tags, connection, config);
+        this.meterNamePrefix = meterNamePrefix;
+    }
+
+    private static Iterable<Tag> extractTags(ObjectName obj) {
+        String name = obj.getKeyProperty("name");
+        return name != null ? Tags.of("pool", name) : Tags.empty();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        binder.bindMetricsForMBeanType(registry, "BufferPool", ctx -> {
+            ctx.bindGauge("Count", meterNamePrefix + "buffer-pool-count", "The number of buffers in the pool.");
+            ctx.bindGauge("MemoryUsed", meterNamePrefix + "buffer-pool-memory-used", "Memory used by buffers of the pool.", BaseUnits.BYTES);
+            ctx.bindGauge("TotalCapacity", meterNamePrefix + "buffer-pool-total-capacity", "Total capacity of buffers of the pool.", BaseUnits.BYTES);
+        });
+    }
+
+    @Override
+    public void close() {
+        binder.close();
+    }
+}
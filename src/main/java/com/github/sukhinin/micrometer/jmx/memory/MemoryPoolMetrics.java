@@ -0,0 +1,158 @@
+package com.github.sukhinin.micrometer.jmx.memory;
+
+import com.github.sukhinin.micrometer.jmx.BindingContext;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import javax.management.Attribute;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+
+/**
+ * Binds usage of heap and non-heap memory pools reported by {@code java.lang:type=MemoryPool} MBeans.
+ * <p>
+ * Optionally arms usage and collection usage thresholds of the pools, and counts threshold crossings reported by
+ * notifications of the {@code java.lang:type=Memory} MBean. Thresholds are a setting of the whole monitored JVM;
+ * those armed by the binder are disarmed again once the binder is closed, unless they have been changed meanwhile.
+ */
+public class MemoryPoolMetrics implements MeterBinder, AutoCloseable {
+
+    private static final String JMX_DOMAIN = "java.lang";
+
+    private static final String DEFAULT_METER_NAME_PREFIX = "java.lang.";
+
+    private static final NotificationFilterSupport THRESHOLD_NOTIFICATION_FILTER = new NotificationFilterSupport();
+
+    static {
+        THRESHOLD_NOTIFICATION_FILTER.enableType(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED);
+        THRESHOLD_NOTIFICATION_FILTER.enableType(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED);
+    }
+
+    private final JmxMeterBinder binder;
+
+    private final String meterNamePrefix;
+
+    private final MBeanServerConnection connection;
+
+    private final MemoryPoolMetricsConfig config;
+
+    public MemoryPoolMetrics() {
+        this(Tags.empty());
+    }
+
+    public MemoryPoolMetrics(Iterable<Tag> tags) {
+        this(tags, DEFAULT_METER_NAME_PREFIX);
+    }
+
+    public MemoryPoolMetrics(Iterable<Tag> tags, String meterNamePrefix) {
+        this(tags, meterNamePrefix, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public MemoryPoolMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(tags, meterNamePrefix, connection, MemoryPoolMetricsConfig.DEFAULT);
+    }
+
+    public MemoryPoolMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, MemoryPoolMetricsConfig config) {
+        this.binder = new JmxMeterBinder(JMX_DOMAIN, MemoryPoolMetrics::extractTags, tags, connection, config.getBinderConfig());
+        this.meterNamePrefix = meterNamePrefix;
+        this.connection = connection;
+        this.config = config;
+    }
+
+    private static Iterable<Tag> extractTags(ObjectName obj) {
+        String name = obj.getKeyProperty("name");
+        return name != null ? Tags.of("pool", name) : Tags.empty();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        JmxMeterBinder.BulkBinding binding = binder.bindMetricsForMBeanTypes(registry).add("MemoryPool", ctx -> {
+            ctx.bindGauge("Usage.used", meterNamePrefix + "memory-pool-used", "Memory used in the pool.", BaseUnits.BYTES);
+            ctx.bindGauge("Usage.committed", meterNamePrefix + "memory-pool-committed", "Memory committed for the pool.", BaseUnits.BYTES);
+            ctx.bindGauge("Usage.max", meterNamePrefix + "memory-pool-max", "Maximum size of the pool, or -1 if undefined.", BaseUnits.BYTES);
+            if (config.getUsageThreshold() > 0 && armThreshold(ctx, "UsageThreshold", config.getUsageThreshold())) {
+                registerCrossingCounter(ctx, Tags.of("threshold", "usage"));
+            }
+            if (config.getCollectionUsageThreshold() > 0 && armThreshold(ctx, "CollectionUsageThreshold", config.getCollectionUsageThreshold())) {
+                registerCrossingCounter(ctx, Tags.of("threshold", "collection"));
+            }
+        });
+        if (config.isThresholdCountingEnabled()) {
+            binding.add("Memory", ctx ->
+                    ctx.addNotificationListener((notification, handback) -> handleNotification(ctx, notification), THRESHOLD_NOTIFICATION_FILTER));
+        }
+        binding.bind();
+    }
+
+    /**
+     * Arms the given threshold of a pool unless it is already armed. A threshold armed here is disarmed once meters
+     * of the pool are unbound.
+     *
+     * @return whether the threshold is armed
+     */
+    private boolean armThreshold(BindingContext ctx, String thresholdAttrName, double fraction) {
+        ObjectName obj = ctx.getObjectName();
+        try {
+            if (!Boolean.TRUE.equals(connection.getAttribute(obj, thresholdAttrName + "Supported"))) {
+                return false;
+            }
+            CompositeData usage = (CompositeData) connection.getAttribute(obj, "Usage");
+            long max = ((Number) usage.get("max")).longValue();
+            if (max <= 0) {
+                return false;
+            }
+            if (((Number) connection.getAttribute(obj, thresholdAttrName)).longValue() == 0) {
+                // A threshold of zero disarms it, so tiny fractions still arm the smallest threshold
+                long threshold = Math.max((long) (max * fraction), 1);
+                connection.setAttribute(obj, new Attribute(thresholdAttrName, threshold));
+                ctx.onUnbind(() -> disarmThreshold(obj, thresholdAttrName, threshold));
+            }
+            return true;
+        } catch (InstanceNotFoundException e) {
+            return false;
+        } catch (JMException | IOException e) {
+            throw new RuntimeException("Error arming " + thresholdAttrName + " of " + obj, e);
+        }
+    }
+
+    private void disarmThreshold(ObjectName obj, String thresholdAttrName, long threshold) {
+        try {
+            // A threshold changed by someone else since it was armed is not ours to disarm
+            if (((Number) connection.getAttribute(obj, thresholdAttrName)).longValue() == threshold) {
+                connection.setAttribute(obj, new Attribute(thresholdAttrName, 0L));
+            }
+        } catch (JMException | IOException ignored) {
+            // The pool or the connection is gone, so there is nothing to disarm
+        }
+    }
+
+    private void handleNotification(BindingContext ctx, Notification notification) {
+        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+        String threshold = MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType()) ? "usage" : "collection";
+        registerCrossingCounter(ctx, Tags.of("pool", info.getPoolName(), "threshold", threshold)).increment();
+    }
+
+    private Counter registerCrossingCounter(BindingContext ctx, Tags extraTags) {
+        return ctx.registerCounter(meterNamePrefix + "memory-pool-threshold-crossings",
+                "The number of times usage of the pool crossed its usage or collection usage threshold.", null, extraTags);
+    }
+
+    @Override
+    public void close() {
+        binder.close();
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.sukhinin.micrometer.jmx.memory;
+
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+
+import java.util.Objects;
+
+/**
+ * Optional settings of {@link MemoryPoolMetrics}. Instances are immutable and created with {@link #builder()}.
+ */
+public final class MemoryPoolMetricsConfig {
+
+    public static final MemoryPoolMetricsConfig DEFAULT = builder().build();
+
+    private final JmxMeterBinderConfig binderConfig;
+
+    private final double usageThreshold;
+
+    private final double collectionUsageThreshold;
+
+    private MemoryPoolMetricsConfig(Builder builder) {
+        this.binderConfig = builder.binderConfig;
+        this.usageThreshold = builder.usageThreshold;
+        this.collectionUsageThreshold = builder.collectionUsageThreshold;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public JmxMeterBinderConfig getBinderConfig() {
+        return binderConfig;
+    }
+
+    /**
+     * Returns the usage threshold armed on memory pools as a fraction of their maximum size, or zero if
+     * usage thresholds are not armed.
+     */
+    public double getUsageThreshold() {
+        return usageThreshold;
+    }
+
+    /**
+     * Returns the collection usage threshold armed on memory pools as a fraction of their maximum size, or zero if
+     * collection usage thresholds are not armed.
+     */
+    public double getCollectionUsageThreshold() {
+        return collectionUsageThreshold;
+    }
+
+    /**
+     * Returns whether thresholds are armed and crossings counted at all.
+     */
+    public boolean isThresholdCountingEnabled() {
+        return usageThreshold > 0 || collectionUsageThreshold > 0;
+    }
+
+    public static final class Builder {
+
+        private JmxMeterBinderConfig binderConfig = JmxMeterBinderConfig.DEFAULT;
+
+        private double usageThreshold;
+
+        private double collectionUsageThreshold;
+
+        private Builder() {
+        }
+
+        public Builder binderConfig(JmxMeterBinderConfig binderConfig) {
+            this.binderConfig = Objects.requireNonNull(binderConfig);
+            return this;
+        }
+
+        /**
+         * Arms the usage threshold of every memory pool that supports one and has a defined maximum size, and counts
+         * notifications of usage crossing it. The JVM checks usage thresholds in the background, so crossings are
+         * counted even if usage drops again before the next scrape. Thresholds already armed by the application
+         * are left untouched and counted as well.
+         *
+         * @param fraction threshold as a fraction of the maximum size of a pool, zero to disable
+         * @return this builder
+         */
+        public Builder usageThreshold(double fraction) {
+            this.usageThreshold = checkFraction(fraction);
+            return this;
+        }
+
+        /**
+         * Arms the collection usage threshold of every memory pool that supports one and has a defined maximum size,
+         * and counts notifications of usage after a garbage collection crossing it. Unlike usage crossings, these
+         * show memory that could not be reclaimed.
+         *
+         * @param fraction threshold as a fraction of the maximum size of a pool, zero to disable
+         * @return this builder
+         */
+        public Builder collectionUsageThreshold(double fraction) {
+            this.collectionUsageThreshold = checkFraction(fraction);
+            return this;
+        }
+
+        public MemoryPoolMetricsConfig build() {
+            return new MemoryPoolMetricsConfig(this);
+        }
+
+        private static double checkFraction(double fraction) {
+            if (!(fraction >= 0 && fraction <= 1)) {
+                throw new IllegalArgumentException("Threshold must be a fraction between 0 and 1: " + fraction);
+            }
+            return fraction;
+        }
+    }
+}
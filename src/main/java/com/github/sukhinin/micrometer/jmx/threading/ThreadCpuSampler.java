@@ -0,0 +1,369 @@
+package com.github.sukhinin.micrometer.jmx.threading;
+
+import com.sun.management.ThreadMXBean;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Samples CPU time and contention of all threads of a JVM with bulk {@link ThreadMXBean} calls, and publishes meters
+ * for the threads with the highest CPU usage and for groups of threads. Scrapes only read values of the last sample.
+ * <p>
+ * Threads are read in chunks of {@value #CHUNK_SIZE}. Once the time budget of a sample is exhausted no further chunk is
+ * read, and the next sample starts with the first thread left out. At least one chunk is read per sample. Top threads
+ * that were left out keep their values of the last sample that read them.
+ */
+class ThreadCpuSampler implements Runnable {
+
+    static final int CHUNK_SIZE = 256;
+
+    private final ThreadMXBean threads;
+
+    private final String meterNamePrefix;
+
+    private final Iterable<Tag> tags;
+
+    private final int topThreads;
+
+    private final long budgetNanos;
+
+    private final Clock clock;
+
+    private final List<ThreadGroupStats> groups = new ArrayList<>();
+
+    private final Map<Long, ThreadState> states = new HashMap<>();
+
+    private final Map<String, TopThread> top = new HashMap<>();
+
+    private final Map<MeterRegistry, Map<String, List<Meter>>> topMeters = new HashMap<>();
+
+    private final Map<MeterRegistry, List<Meter>> meters = new HashMap<>();
+
+    private volatile long incompleteSamples;
+
+    private int cursor;
+
+    private long round;
+
+    ThreadCpuSampler(ThreadMXBean threads, String meterNamePrefix, Iterable<Tag> tags, ThreadingMetricsConfig config) {
+        this.threads = threads;
+        this.meterNamePrefix = meterNamePrefix;
+        this.tags = tags;
+        this.topThreads = config.getTopThreads();
+        this.budgetNanos = config.getSamplingBudget().toNanos();
+        this.clock = config.getBinderConfig().getClock();
+        config.getThreadGroups().forEach((name, pattern) -> groups.add(new ThreadGroupStats(name, pattern)));
+    }
+
+    /**
+     * Registers group meters and meters of the current top threads, and keeps top thread meters of the registry
+     * up to date with every sample.
+     */
+    synchronized void addRegistry(MeterRegistry registry) {
+        if (meters.containsKey(registry)) {
+            return;
+        }
+        List<Meter> registryMeters = new ArrayList<>();
+        for (ThreadGroupStats group : groups) {
+            Tags groupTags = Tags.of(tags).and("group", group.name);
+            registryMeters.add(FunctionCounter.builder(meterNamePrefix + "thread-group-cpu-time", group, g -> g.cpuNanos / 1e9)
+                    .description("CPU time of threads of the group.").baseUnit("seconds").tags(groupTags).register(registry));
+            registryMeters.add(FunctionCounter.builder(meterNamePrefix + "thread-group-blocked-count", group, g -> g.blockedCount)
+                    .description("Number of times threads of the group blocked to enter a monitor.").tags(groupTags).register(registry));
+            registryMeters.add(FunctionCounter.builder(meterNamePrefix + "thread-group-waited-count", group, g -> g.waitedCount)
+                    .description("Number of times threads of the group waited for a notification.").tags(groupTags).register(registry));
+            registryMeters.add(Gauge.builder(meterNamePrefix + "thread-group-threads", group, g -> g.threads)
+                    .description("Number of live threads of the group.").tags(groupTags).register(registry));
+        }
+        registryMeters.add(FunctionCounter.builder(meterNamePrefix + "thread-samples-incomplete", this, s -> s.incompleteSamples)
+                .description("Number of thread samples that ran out of time budget before reading all threads.").tags(tags).register(registry));
+        meters.put(registry, registryMeters);
+
+        Map<String, List<Meter>> registryTopMeters = new HashMap<>();
+        top.forEach((name, thread) -> registryTopMeters.put(name, registerTopThreadMeters(registry, thread)));
+        topMeters.put(registry, registryTopMeters);
+    }
+
+    /**
+     * Removes all meters registered by this sampler.
+     */
+    synchronized void removeMeters() {
+        meters.forEach((registry, registryMeters) -> registryMeters.forEach(registry::remove));
+        topMeters.forEach((registry, registryTopMeters) -> registryTopMeters.values().forEach(list -> list.forEach(registry::remove)));
+        meters.clear();
+        topMeters.clear();
+        top.clear();
+    }
+
+    @Override
+    public synchronized void run() {
+        try {
+            sample();
+        } catch (RuntimeException ignored) {
+            // The connection may be broken or the MBean gone, so the next sample tries again
+        }
+    }
+
+    private void sample() {
+        long deadline = clock.monotonicTime() + budgetNanos;
+        round++;
+        long[] ids = threads.getAllThreadIds();
+        Set<Long> alive = new HashSet<>(ids.length * 2);
+        for (long id : ids) {
+            alive.add(id);
+        }
+        states.keySet().retainAll(alive);
+
+        List<ThreadState> sampled = new ArrayList<>();
+        int count = ids.length;
+        int position = cursor < count ? cursor : 0;
+        int processed = 0;
+        while (processed < count) {
+            if (processed > 0 && clock.monotonicTime() - deadline >= 0) {
+                break;
+            }
+            int end = Math.min(Math.min(position + CHUNK_SIZE, count), position + count - processed);
+            long[] chunk = Arrays.copyOfRange(ids, position, end);
+            long[] cpuTimes = threads.getThreadCpuTime(chunk);
+            ThreadInfo[] infos = threads.getThreadInfo(chunk, 0);
+            long now = clock.monotonicTime();
+            for (int i = 0; i < chunk.length; i++) {
+                observe(chunk[i], cpuTimes[i], infos[i], now, sampled);
+            }
+            processed += end - position;
+            position = end == count ? 0 : end;
+        }
+        if (processed < count) {
+            incompleteSamples++;
+            cursor = position;
+        } else {
+            cursor = 0;
+        }
+
+        for (ThreadState state : states.values()) {
+            if (state.group != null) {
+                state.group.counted++;
+            }
+        }
+        for (ThreadGroupStats group : groups) {
+            group.threads = group.counted;
+            group.counted = 0;
+        }
+        if (topThreads > 0) {
+            if (processed < count) {
+                // Top threads left out of this sample compete with their last values, so they don't drop out of top
+                for (ThreadState state : states.values()) {
+                    if (state.sampledRound != round && top.containsKey(state.name)) {
+                        sampled.add(state);
+                    }
+                }
+            }
+            updateTop(sampled);
+        }
+    }
+
+    private void observe(long id, long cpuTime, ThreadInfo info, long now, List<ThreadState> sampled) {
+        // The thread has terminated, or CPU time measurement is not supported or disabled
+        if (cpuTime < 0 || info == null) {
+            return;
+        }
+        ThreadState state = states.get(id);
+        if (state == null) {
+            // The first observation is the baseline of the thread
+            state = new ThreadState(info.getThreadName(), groupOf(info.getThreadName()));
+            state.update(cpuTime, info, now, round);
+            states.put(id, state);
+            return;
+        }
+        long elapsed = now - state.sampledAt;
+        long cpuDelta = cpuTime - state.cpuTime;
+        long blockedCountDelta = info.getBlockedCount() - state.blockedCount;
+        long waitedCountDelta = info.getWaitedCount() - state.waitedCount;
+        state.cpuUsage = elapsed > 0 ? (double) cpuDelta / elapsed : 0;
+        state.blockedCountDelta = blockedCountDelta;
+        state.waitedCountDelta = waitedCountDelta;
+        state.blockedTimeDelta = timeDelta(info.getBlockedTime(), state.blockedTime);
+        state.waitedTimeDelta = timeDelta(info.getWaitedTime(), state.waitedTime);
+        if (state.group != null) {
+            state.group.cpuNanos += cpuDelta;
+            state.group.blockedCount += blockedCountDelta;
+            state.group.waitedCount += waitedCountDelta;
+        }
+        state.update(cpuTime, info, now, round);
+        sampled.add(state);
+    }
+
+    private static double timeDelta(long current, long previous) {
+        // Times are -1 while contention monitoring is disabled
+        return current >= 0 && previous >= 0 ? current - previous : Double.NaN;
+    }
+
+    private ThreadGroupStats groupOf(String threadName) {
+        for (ThreadGroupStats group : groups) {
+            if (group.pattern.matcher(threadName).matches()) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    private void updateTop(List<ThreadState> sampled) {
+        sampled.sort((a, b) -> Double.compare(b.cpuUsage, a.cpuUsage));
+        Map<String, ThreadState> newTop = new LinkedHashMap<>();
+        for (ThreadState state : sampled) {
+            if (newTop.size() == topThreads) {
+                break;
+            }
+            newTop.putIfAbsent(state.name, state);
+        }
+
+        top.keySet().removeIf(name -> {
+            if (newTop.containsKey(name)) {
+                return false;
+            }
+            topMeters.forEach((registry, registryTopMeters) -> registryTopMeters.remove(name).forEach(registry::remove));
+            return true;
+        });
+        newTop.forEach((name, state) -> {
+            TopThread thread = top.get(name);
+            if (thread == null) {
+                thread = new TopThread(name);
+                top.put(name, thread);
+                for (Map.Entry<MeterRegistry, Map<String, List<Meter>>> entry : topMeters.entrySet()) {
+                    entry.getValue().put(name, registerTopThreadMeters(entry.getKey(), thread));
+                }
+            }
+            thread.cpuUsage = state.cpuUsage;
+            thread.blockedCount = state.blockedCountDelta;
+            thread.blockedTime = state.blockedTimeDelta;
+            thread.waitedCount = state.waitedCountDelta;
+            thread.waitedTime = state.waitedTimeDelta;
+        });
+    }
+
+    private List<Meter> registerTopThreadMeters(MeterRegistry registry, TopThread thread) {
+        Tags threadTags = Tags.of(tags).and("thread", thread.name);
+        List<Meter> threadMeters = new ArrayList<>(5);
+        threadMeters.add(Gauge.builder(meterNamePrefix + "thread-cpu-usage", thread, t -> t.cpuUsage)
+                .description("CPU time of the thread per elapsed time between the last two samples.").tags(threadTags).register(registry));
+        threadMeters.add(Gauge.builder(meterNamePrefix + "thread-blocked-count", thread, t -> t.blockedCount)
+                .description("Number of times the thread blocked to enter a monitor between the last two samples.").tags(threadTags).register(registry));
+        threadMeters.add(TimeGauge.builder(meterNamePrefix + "thread-blocked-time", thread, TimeUnit.MILLISECONDS, t -> t.blockedTime)
+                .description("Time the thread spent blocked between the last two samples.").tags(threadTags).register(registry));
+        threadMeters.add(Gauge.builder(meterNamePrefix + "thread-waited-count", thread, t -> t.waitedCount)
+                .description("Number of times the thread waited for a notification between the last two samples.").tags(threadTags).register(registry));
+        threadMeters.add(TimeGauge.builder(meterNamePrefix + "thread-waited-time", thread, TimeUnit.MILLISECONDS, t -> t.waitedTime)
+                .description("Time the thread spent waiting between the last two samples.").tags(threadTags).register(registry));
+        return threadMeters;
+    }
+
+    private static final class ThreadState {
+
+        private final String name;
+
+        private final ThreadGroupStats group;
+
+        private long cpuTime;
+
+        private long blockedCount;
+
+        private long blockedTime;
+
+        private long waitedCount;
+
+        private long waitedTime;
+
+        private long sampledAt;
+
+        private long sampledRound;
+
+        private double cpuUsage;
+
+        private long blockedCountDelta;
+
+        private double blockedTimeDelta;
+
+        private long waitedCountDelta;
+
+        private double waitedTimeDelta;
+
+        private ThreadState(String name, ThreadGroupStats group) {
+            this.name = name;
+            this.group = group;
+        }
+
+        private void update(long cpuTime, ThreadInfo info, long now, long round) {
+            this.cpuTime = cpuTime;
+            this.blockedCount = info.getBlockedCount();
+            this.blockedTime = info.getBlockedTime();
+            this.waitedCount = info.getWaitedCount();
+            this.waitedTime = info.getWaitedTime();
+            this.sampledAt = now;
+            this.sampledRound = round;
+        }
+    }
+
+    /**
+     * Totals of a group of threads. Written by the sampling thread only, read by scrapes.
+     */
+    private static final class ThreadGroupStats {
+
+        private final String name;
+
+        private final Pattern pattern;
+
+        private volatile long cpuNanos;
+
+        private volatile long blockedCount;
+
+        private volatile long waitedCount;
+
+        private volatile int threads;
+
+        private int counted;
+
+        private ThreadGroupStats(String name, Pattern pattern) {
+            this.name = name;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * Values of a top thread in the last sample. Written by the sampling thread only, read by scrapes.
+     */
+    private static final class TopThread {
+
+        private final String name;
+
+        private volatile double cpuUsage;
+
+        private volatile double blockedCount;
+
+        private volatile double blockedTime;
+
+        private volatile double waitedCount;
+
+        private volatile double waitedTime;
+
+        private TopThread(String name) {
+            this.name = name;
+        }
+    }
+}
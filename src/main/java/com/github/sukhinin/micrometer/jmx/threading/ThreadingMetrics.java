@@ -1,14 +1,21 @@
 package com.github.sukhinin.micrometer.jmx.threading;
 
 import com.github.sukhinin.micrometer.jmx.JmxMeterBinder;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+import com.sun.management.ThreadMXBean;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.binder.MeterBinder;
 
-import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ThreadingMetrics implements MeterBinder, AutoCloseable {
 
@@ -20,6 +27,20 @@ public class ThreadingMetrics implements MeterBinder, AutoCloseable {
 
     private String meterNamePrefix;
 
+    private final Iterable<Tag> tags;
+
+    private final MBeanServerConnection connection;
+
+    private final ThreadingMetricsConfig config;
+
+    private ThreadCpuSampler sampler;
+
+    private ScheduledExecutorService ownSamplingExecutor;
+
+    private ScheduledFuture<?> samplingTask;
+
+    private ThreadMXBean contentionMonitoringEnabledOn;
+
     public ThreadingMetrics() {
         this(Tags.empty());
     }
@@ -32,9 +53,20 @@ public class ThreadingMetrics implements MeterBinder, AutoCloseable {
         this(tags, meterNamePrefix, ManagementFactory.getPlatformMBeanServer());
     }
 
-    public ThreadingMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServer mBeanServer) {
-        this.binder = new JmxMeterBinder(JMX_DOMAIN, obj -> Collections.emptyList(), tags, mBeanServer);
+    public ThreadingMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection) {
+        this(tags, meterNamePrefix, connection, JmxMeterBinderConfig.DEFAULT);
+    }
+
+    public ThreadingMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, JmxMeterBinderConfig config) {
+        this(tags, meterNamePrefix, connection, ThreadingMetricsConfig.builder().binderConfig(config).build());
+    }
+
+    public ThreadingMetrics(Iterable<Tag> tags, String meterNamePrefix, MBeanServerConnection connection, ThreadingMetricsConfig config) {
+        this.binder = new JmxMeterBinder(JMX_DOMAIN, obj -> Collections.emptyList(), tags, connection, config.getBinderConfig());
         this.meterNamePrefix = meterNamePrefix;
+        this.tags = tags;
+        this.connection = connection;
+        this.config = config;
     }
 
     @Override
@@ -45,10 +77,60 @@ public class ThreadingMetrics implements MeterBinder, AutoCloseable {
             ctx.bindGauge("ThreadCount", meterNamePrefix + "thread-count", "ThreadCount");
             ctx.bindFunctionCounter("TotalStartedThreadCount", meterNamePrefix + "total-started-thread-count", "TotalStartedThreadCount");
         });
+        if (config.isSamplingEnabled()) {
+            getSampler().addRegistry(registry);
+        }
+    }
+
+    private synchronized ThreadCpuSampler getSampler() {
+        if (sampler == null) {
+            ThreadMXBean threads;
+            try {
+                threads = ManagementFactory.newPlatformMXBeanProxy(connection, ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+                if (config.isContentionMonitoringEnabled() && threads.isThreadContentionMonitoringSupported()
+                        && !threads.isThreadContentionMonitoringEnabled()) {
+                    threads.setThreadContentionMonitoringEnabled(true);
+                    contentionMonitoringEnabledOn = threads;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error creating thread MXBean proxy", e);
+            }
+            sampler = new ThreadCpuSampler(threads, meterNamePrefix, tags, config);
+            ScheduledExecutorService executor = config.getSamplingExecutor();
+            if (executor == null) {
+                ownSamplingExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "threading-metrics-sampler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor = ownSamplingExecutor;
+            }
+            long intervalMillis = config.getSamplingInterval().toMillis();
+            samplingTask = executor.scheduleWithFixedDelay(sampler, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return sampler;
     }
 
     @Override
     public void close() {
         binder.close();
+        synchronized (this) {
+            if (sampler != null) {
+                samplingTask.cancel(false);
+                if (ownSamplingExecutor != null) {
+                    ownSamplingExecutor.shutdown();
+                }
+                sampler.removeMeters();
+                sampler = null;
+            }
+            if (contentionMonitoringEnabledOn != null) {
+                try {
+                    contentionMonitoringEnabledOn.setThreadContentionMonitoringEnabled(false);
+                } catch (RuntimeException ignored) {
+                    // The connection may be closed already, along with the JVM it monitors
+                }
+                contentionMonitoringEnabledOn = null;
+            }
+        }
     }
 }
@@ -0,0 +1,196 @@
+package com.github.sukhinin.micrometer.jmx.threading;
+
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * Optional settings of {@link ThreadingMetrics}. Instances are immutable and created with {@link #builder()}.
+ */
+public final class ThreadingMetricsConfig {
+
+    public static final ThreadingMetricsConfig DEFAULT = builder().build();
+
+    private final JmxMeterBinderConfig binderConfig;
+
+    private final int topThreads;
+
+    private final Map<String, Pattern> threadGroups;
+
+    private final Duration samplingInterval;
+
+    private final Duration samplingBudget;
+
+    private final ScheduledExecutorService samplingExecutor;
+
+    private final boolean contentionMonitoringEnabled;
+
+    private ThreadingMetricsConfig(Builder builder) {
+        this.binderConfig = builder.binderConfig;
+        this.topThreads = builder.topThreads;
+        this.threadGroups = Collections.unmodifiableMap(new LinkedHashMap<>(builder.threadGroups));
+        this.samplingInterval = builder.samplingInterval;
+        this.samplingBudget = builder.samplingBudget;
+        this.samplingExecutor = builder.samplingExecutor;
+        this.contentionMonitoringEnabled = builder.contentionMonitoringEnabled;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public JmxMeterBinderConfig getBinderConfig() {
+        return binderConfig;
+    }
+
+    /**
+     * Returns the number of threads with the highest CPU usage to publish per-thread meters for.
+     */
+    public int getTopThreads() {
+        return topThreads;
+    }
+
+    /**
+     * Returns patterns of thread names to aggregate per-thread meters by, keyed by group name.
+     */
+    public Map<String, Pattern> getThreadGroups() {
+        return threadGroups;
+    }
+
+    /**
+     * Returns whether per-thread CPU and contention are sampled at all.
+     */
+    public boolean isSamplingEnabled() {
+        return topThreads > 0 || !threadGroups.isEmpty();
+    }
+
+    public Duration getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    public Duration getSamplingBudget() {
+        return samplingBudget;
+    }
+
+    /**
+     * Returns the executor sampling threads, or {@code null} if the binder runs its own sampling thread.
+     */
+    public ScheduledExecutorService getSamplingExecutor() {
+        return samplingExecutor;
+    }
+
+    public boolean isContentionMonitoringEnabled() {
+        return contentionMonitoringEnabled;
+    }
+
+    public static final class Builder {
+
+        private JmxMeterBinderConfig binderConfig = JmxMeterBinderConfig.DEFAULT;
+
+        private int topThreads;
+
+        private final Map<String, Pattern> threadGroups = new LinkedHashMap<>();
+
+        private Duration samplingInterval = Duration.ofSeconds(10);
+
+        private Duration samplingBudget = Duration.ofMillis(50);
+
+        private ScheduledExecutorService samplingExecutor;
+
+        private boolean contentionMonitoringEnabled;
+
+        private Builder() {
+        }
+
+        public Builder binderConfig(JmxMeterBinderConfig binderConfig) {
+            this.binderConfig = Objects.requireNonNull(binderConfig);
+            return this;
+        }
+
+        /**
+         * Publishes CPU usage, blocked and waited counts and times of the threads with the highest CPU usage
+         * since the previous sample. Meters of a thread are removed once it drops out of the top.
+         *
+         * @param topThreads number of threads to publish meters for, zero to disable
+         * @return this builder
+         */
+        public Builder topThreads(int topThreads) {
+            if (topThreads < 0) {
+                throw new IllegalArgumentException("Top threads must not be negative: " + topThreads);
+            }
+            this.topThreads = topThreads;
+            return this;
+        }
+
+        /**
+         * Publishes CPU time, blocked and waited counts summed over all threads whose names match the given pattern.
+         * A thread is accounted to the first group it matches.
+         *
+         * @param name    group name, used as the {@code group} tag
+         * @param pattern pattern matching entire thread names, e.g. {@code kafka-coordinator-heartbeat-thread.*}
+         * @return this builder
+         */
+        public Builder threadGroup(String name, Pattern pattern) {
+            threadGroups.put(Objects.requireNonNull(name), Objects.requireNonNull(pattern));
+            return this;
+        }
+
+        public Builder samplingInterval(Duration samplingInterval) {
+            if (samplingInterval.isNegative() || samplingInterval.isZero()) {
+                throw new IllegalArgumentException("Sampling interval must be positive: " + samplingInterval);
+            }
+            this.samplingInterval = samplingInterval;
+            return this;
+        }
+
+        /**
+         * Bounds the time spent on a single sample. Threads are read in bulk chunks, and no chunk is read once the
+         * budget is exhausted; the next sample continues with the threads left out, so that all threads are
+         * eventually sampled even on JVMs with thousands of threads.
+         *
+         * @param samplingBudget time budget of a sample, defaults to 50 milliseconds
+         * @return this builder
+         */
+        public Builder samplingBudget(Duration samplingBudget) {
+            if (samplingBudget.isNegative()) {
+                throw new IllegalArgumentException("Sampling budget must not be negative: " + samplingBudget);
+            }
+            this.samplingBudget = samplingBudget;
+            return this;
+        }
+
+        /**
+         * Sets the executor sampling threads. The executor is not shut down by the binder.
+         *
+         * @param samplingExecutor executor to sample on, {@code null} to run a sampling thread per binder
+         * @return this builder
+         */
+        public Builder samplingExecutor(ScheduledExecutorService samplingExecutor) {
+            this.samplingExecutor = samplingExecutor;
+            return this;
+        }
+
+        /**
+         * Enables thread contention monitoring of the JVM, which is required for blocked and waited times.
+         * Monitoring adds overhead to every contended lock of the JVM, so it is disabled by default. If monitoring was
+         * disabled before, it is disabled again when the binder is closed.
+         *
+         * @param enabled whether to enable contention monitoring when sampling starts
+         * @return this builder
+         */
+        public Builder contentionMonitoring(boolean enabled) {
+            this.contentionMonitoringEnabled = enabled;
+            return this;
+        }
+
+        public ThreadingMetricsConfig build() {
+            return new ThreadingMetricsConfig(this);
+        }
+    }
+}
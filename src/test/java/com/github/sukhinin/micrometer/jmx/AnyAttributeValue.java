@@ -0,0 +1,53 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import javax.management.*;
+
+/**
+ * Dynamic MBean returning the same value for any attribute name, like Kafka metrics MBeans do for their metrics.
+ */
+public class AnyAttributeValue implements DynamicMBean {
+
+    private volatile double value;
+
+    public AnyAttributeValue(double value) {
+        this.value = value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) {
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            list.add(new Attribute(attribute, value));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return new MBeanInfo(getClass().getName(), null, null, null, null, null);
+    }
+}
@@ -5,13 +5,21 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import javax.management.MBeanServer;
-import javax.management.MBeanServerFactory;
-import javax.management.MalformedObjectNameException;
-import javax.management.ObjectName;
+import javax.management.*;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 
 class BindingContextTest {
 
@@ -21,6 +29,8 @@ class BindingContextTest {
 
     private static final Iterable<Tag> TAGS = Tags.of("tag", "value");
 
+    private MBeanServer mBeanServer;
+
     private MeterRegistry registry;
 
     private BindingContext context;
@@ -30,7 +40,7 @@ class BindingContextTest {
         DoubleValue value = new DoubleValue();
         value.setValue(1.0);
 
-        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        mBeanServer = MBeanServerFactory.newMBeanServer();
         mBeanServer.registerMBean(value, new ObjectName(OBJECT_NAME));
 
         registry = new SimpleMeterRegistry();
@@ -80,4 +90,237 @@ class BindingContextTest {
         assertEquals(Double.NaN, gauge.value());
         assertNull(registry.find("double.value").gauge());
     }
+
+    @Test
+    void shouldReadAllBoundAttributesWithSingleCallPerScrape() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        BindingContext ctx = new BindingContext(spyMBeanServer, registry, new ObjectName(OBJECT_NAME), TAGS);
+        ctx.bindGauge("Value", "double.value", "description");
+        ctx.bindFunctionCounter("Value", "double.value.total", "description");
+
+        Gauge gauge = registry.get("double.value").gauge();
+        FunctionCounter functionCounter = registry.get("double.value.total").functionCounter();
+
+        assertEquals(1.0, gauge.value());
+        assertEquals(1.0, functionCounter.count());
+        verify(spyMBeanServer, times(1)).getAttributes(any(ObjectName.class), any(String[].class));
+
+        assertEquals(1.0, gauge.value());
+        verify(spyMBeanServer, times(2)).getAttributes(any(ObjectName.class), any(String[].class));
+        verify(spyMBeanServer, never()).getAttribute(any(ObjectName.class), anyString());
+    }
+
+    @Test
+    void shouldReadItemsOfCompositeAttributeWithSingleRead() throws JMException {
+        ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=PoolUsage");
+        PoolUsage usage = new PoolUsage();
+        usage.setUsage("eden", 10, 20);
+        mBeanServer.registerMBean(usage, obj);
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        BindingContext ctx = new BindingContext(spyMBeanServer, registry, obj, TAGS);
+        ctx.bindGauge("TotalUsage.used", "usage.used", "description");
+        ctx.bindGauge("TotalUsage.committed", "usage.committed", "description");
+
+        assertEquals(10.0, registry.get("usage.used").gauge().value());
+        assertEquals(20.0, registry.get("usage.committed").gauge().value());
+        verify(spyMBeanServer, times(1)).getAttributes(obj, new String[]{"TotalUsage"});
+
+        usage.setUsage("old", 5, 5);
+        assertEquals(15.0, registry.get("usage.used").gauge().value());
+        assertEquals(25.0, registry.get("usage.committed").gauge().value());
+        verify(spyMBeanServer, times(2)).getAttributes(obj, new String[]{"TotalUsage"});
+    }
+
+    @Test
+    void shouldUnbindMeterOfMissingCompositeItem() throws JMException {
+        ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=PoolUsage");
+        mBeanServer.registerMBean(new PoolUsage(), obj);
+        BindingContext ctx = new BindingContext(mBeanServer, registry, obj, TAGS);
+        ctx.bindGauge("TotalUsage.missing", "usage.missing", "description");
+
+        assertEquals(Double.NaN, registry.get("usage.missing").gauge().value());
+        assertNull(registry.find("usage.missing").gauge());
+        assertThrows(IllegalArgumentException.class, () -> ctx.bindGauge("TotalUsage..used", "usage.invalid", "description"));
+    }
+
+    @Test
+    void shouldExpandRowsOfTabularAttributeIntoTaggedMeters() throws JMException {
+        ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=PoolUsage");
+        PoolUsage usage = new PoolUsage();
+        usage.setUsage("eden", 10, 20);
+        usage.setUsage("old", 30, 40);
+        mBeanServer.registerMBean(usage, obj);
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        BindingContext ctx = new BindingContext(spyMBeanServer, registry, obj, TAGS);
+        ctx.bindTabularGauges("UsageByPool", "value.used", "pool.used", "description", "bytes", "pool");
+        ctx.bindTabularFunctionCounters("UsageByPool", "value.committed", "pool.committed", "description", null);
+
+        Gauge eden = registry.get("pool.used").tags("pool", "eden").tags(TAGS).gauge();
+        Gauge old = registry.get("pool.used").tags("pool", "old").gauge();
+        assertEquals(10.0, eden.value());
+        assertEquals(30.0, old.value());
+        assertEquals(40.0, registry.get("pool.committed").tags("key", "old").functionCounter().count());
+        verify(spyMBeanServer, times(1)).getAttributes(obj, new String[]{"UsageByPool"});
+
+        usage.setUsage("eden", 15, 20);
+        usage.removeUsage("old");
+        assertEquals(15.0, eden.value());
+        assertEquals(Double.NaN, old.value());
+        assertNull(registry.find("pool.used").tags("pool", "old").gauge());
+        assertThrows(IllegalArgumentException.class, () ->
+                ctx.bindTabularGauges("UsageByPool", "value.used", "pool.used", "description", null, "pool", "extra"));
+    }
+
+    @Test
+    void shouldTakeValuesFromAttributeChangeNotifications() throws JMException {
+        ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=NotifyingValue");
+        NotifyingDoubleValue value = new NotifyingDoubleValue(1.0);
+        mBeanServer.registerMBean(new StandardEmitterMBean(value, DoubleValueMBean.class, value), obj);
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().attributeChangeNotifications(true).build();
+        BoundMBean boundMBean = new BoundMBean(spyMBeanServer, obj, Tags.of(TAGS), config, null);
+        BindingContext ctx = new BindingContext(boundMBean, registry);
+        ctx.bindGauge("Value", "double.value", "description");
+        Gauge gauge = registry.get("double.value").gauge();
+
+        // The value is read until the first notification arrives
+        assertEquals(1.0, gauge.value());
+        verify(spyMBeanServer, times(1)).getAttributes(any(ObjectName.class), any(String[].class));
+
+        value.setValue(2.0);
+        assertEquals(2.0, gauge.value());
+        assertEquals(2.0, gauge.value());
+        value.setValueWithoutNotification(3.0);
+        assertEquals(2.0, gauge.value());
+        verify(spyMBeanServer, times(1)).getAttributes(any(ObjectName.class), any(String[].class));
+
+        boundMBean.removeMeters();
+        verify(spyMBeanServer, times(1)).removeNotificationListener(eq(obj), any(NotificationListener.class), any(), any());
+    }
+
+    @Test
+    void shouldReadMBeansNotDeclaringAttributeChangeNotifications() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().attributeChangeNotifications(true).build();
+        BoundMBean boundMBean = new BoundMBean(spyMBeanServer, new ObjectName(OBJECT_NAME), Tags.of(TAGS), config, null);
+        BindingContext ctx = new BindingContext(boundMBean, registry);
+        ctx.bindGauge("Value", "double.value", "description");
+        Gauge gauge = registry.get("double.value").gauge();
+
+        assertEquals(1.0, gauge.value());
+        assertEquals(1.0, gauge.value());
+        verify(spyMBeanServer, times(2)).getAttributes(any(ObjectName.class), any(String[].class));
+        verify(spyMBeanServer, never()).addNotificationListener(any(ObjectName.class), any(NotificationListener.class), any(), any());
+    }
+
+    @Test
+    void shouldReadUpdatedValueOnNextScrape() throws JMException {
+        DoubleValue value = new DoubleValue(1.0);
+        ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=Updated");
+        mBeanServer.registerMBean(value, obj);
+
+        BindingContext ctx = new BindingContext(mBeanServer, registry, obj, TAGS);
+        ctx.bindGauge("Value", "double.value", "description");
+        Gauge gauge = registry.get("double.value").gauge();
+
+        assertEquals(1.0, gauge.value());
+        value.setValue(2.0);
+        assertEquals(2.0, gauge.value());
+    }
+
+    @Test
+    void shouldRemoveMeterAfterConsecutiveFailures() throws JMException {
+        FailurePolicy policy = FailurePolicy.removeAfter(3);
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().failurePolicy(policy).build();
+        ObjectName obj = new ObjectName(OBJECT_NAME);
+        BindingContext ctx = new BindingContext(new BoundMBean(mBeanServer, obj, Tags.of(TAGS), config, null), registry);
+        ctx.bindGauge("Missing", "missing.value", "description");
+
+        Gauge gauge = registry.get("missing.value").gauge();
+        assertTrue(Double.isNaN(gauge.value()));
+        assertTrue(Double.isNaN(gauge.value()));
+        assertNotNull(registry.find("missing.value").gauge());
+        assertTrue(Double.isNaN(gauge.value()));
+        assertNull(registry.find("missing.value").gauge());
+        assertEquals(3, policy.getFailureCount());
+        assertEquals(1, policy.getRemovedMeterCount());
+    }
+
+    @Test
+    void shouldSkipReadsOfFailingMBeanWhileBackingOff() throws JMException, IOException {
+        MockClock clock = new MockClock();
+        FailurePolicy policy = FailurePolicy.backoff(Duration.ofSeconds(1), Duration.ofSeconds(10));
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().failurePolicy(policy).clock(clock).build();
+        ObjectName obj = new ObjectName(OBJECT_NAME);
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        BindingContext ctx = new BindingContext(new BoundMBean(spyMBeanServer, obj, Tags.of(TAGS), config, null), registry);
+        ctx.bindGauge("Value", "double.value", "description");
+        mBeanServer.unregisterMBean(obj);
+
+        Gauge gauge = registry.get("double.value").gauge();
+        assertTrue(Double.isNaN(gauge.value()));
+        assertTrue(Double.isNaN(gauge.value()));
+        verify(spyMBeanServer, times(1)).getAttributes(any(), any());
+        assertEquals(1, policy.getSkippedReadCount());
+
+        clock.add(1, TimeUnit.SECONDS);
+        assertTrue(Double.isNaN(gauge.value()));
+        verify(spyMBeanServer, times(2)).getAttributes(any(), any());
+
+        mBeanServer.registerMBean(new DoubleValue(5.0), obj);
+        clock.add(2, TimeUnit.SECONDS);
+        assertEquals(5.0, gauge.value());
+        assertEquals(2, policy.getFailureCount());
+        assertEquals(0, policy.getRemovedMeterCount());
+    }
+
+    @Test
+    void shouldReturnLastKnownValueOfSlowMBeanAndOpenCircuit() throws Exception {
+        AtomicReference<CountDownLatch> gate = new AtomicReference<>(new CountDownLatch(0));
+        AtomicInteger reads = new AtomicInteger();
+        AnyAttributeValue slowValue = new AnyAttributeValue(1.0) {
+            @Override
+            public AttributeList getAttributes(String[] attributes) {
+                reads.incrementAndGet();
+                try {
+                    gate.get().await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getAttributes(attributes);
+            }
+        };
+        ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=Slow");
+        mBeanServer.registerMBean(slowValue, obj);
+
+        MockClock clock = new MockClock();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder()
+                .readTimeout(Duration.ofMillis(50), executor)
+                .circuitBreakerCooldown(Duration.ofSeconds(10))
+                .clock(clock)
+                .build();
+        BindingContext ctx = new BindingContext(new BoundMBean(mBeanServer, obj, Tags.of(TAGS), config, null), registry);
+        ctx.bindGauge("Value", "slow.value", "description");
+        Gauge gauge = registry.get("slow.value").gauge();
+        assertEquals(1.0, gauge.value());
+
+        CountDownLatch slowGate = new CountDownLatch(1);
+        gate.set(slowGate);
+        slowValue.setValue(2.0);
+        assertEquals(1.0, gauge.value());
+        assertEquals(1.0, gauge.value());
+        assertEquals(2, reads.get());
+
+        // The circuit stays open until the slow read completes, which happens asynchronously
+        slowGate.countDown();
+        clock.add(10, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (gauge.value() != 2.0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2.0, gauge.value());
+        assertNotNull(registry.find("slow.value").gauge());
+        executor.shutdown();
+    }
 }
@@ -0,0 +1,84 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BindingPlanTest {
+
+    private MeterRegistry registry;
+
+    private MBeanServer mBeanServer;
+
+    private ObjectName obj;
+
+    @BeforeEach
+    void beforeEachTest() throws JMException {
+        registry = new SimpleMeterRegistry();
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        obj = new ObjectName("test:type=Test");
+        mBeanServer.registerMBean(new AnyAttributeValue(42.0), obj);
+    }
+
+    @Test
+    void shouldParsePlanFromText() throws IOException {
+        String text = "# type | attribute | meter name | unit | description\n" +
+                "\n" +
+                "gauge | queue-size | queue.size | items | The current queue size.\n" +
+                "time-gauge | latency-avg | latency.avg | milliseconds | The average latency.\n" +
+                "function-counter | requests-total | requests | | The total number of requests.\n";
+        BindingPlan plan = BindingPlan.parse(new StringReader(text)).withNamePrefix("test.");
+        assertEquals(3, plan.size());
+
+        plan.bind(new BindingContext(mBeanServer, registry, obj, Tags.empty()));
+        assertEquals("items", registry.get("test.queue.size").gauge().getId().getBaseUnit());
+        TimeGauge timeGauge = registry.get("test.latency.avg").timeGauge();
+        assertEquals(42.0, timeGauge.value(TimeUnit.MILLISECONDS));
+        assertEquals(42.0, registry.get("test.requests").functionCounter().count());
+        assertEquals("The total number of requests.", registry.get("test.requests").functionCounter().getId().getDescription());
+    }
+
+    @Test
+    void shouldRejectMalformedLines() {
+        assertThrows(IllegalArgumentException.class, () -> BindingPlan.parse(new StringReader("gauge | a | b")));
+        assertThrows(IllegalArgumentException.class, () -> BindingPlan.parse(new StringReader("histogram | a | b | | c")));
+        assertThrows(IllegalArgumentException.class, () -> BindingPlan.parse(new StringReader("time-gauge | a | b | | c")));
+    }
+
+    @Test
+    void shouldCombinePlans() {
+        BindingPlan first = BindingPlan.builder().gauge("a", "a", "A").build();
+        BindingPlan second = BindingPlan.builder().functionCounter("b", "b", "B").build();
+        BindingPlan combined = first.plus(second).withNamePrefix("test.");
+        assertEquals(2, combined.size());
+
+        combined.bind(new BindingContext(mBeanServer, registry, obj, Tags.empty()));
+        assertNotNull(registry.find("test.a").gauge());
+        assertNotNull(registry.find("test.b").functionCounter());
+    }
+
+    @Test
+    void shouldFilterMappings() {
+        BindingPlan plan = BindingPlan.builder()
+                .gauge("a-rate", "a-rate", "A")
+                .functionCounter("a-total", "a-total", "A")
+                .build();
+        assertTrue(plan.containsAttribute("a-total"));
+        BindingPlan counters = plan.filter((type, attrName) -> type == BindingPlan.MeterType.FUNCTION_COUNTER);
+        assertEquals(1, counters.size());
+        assertFalse(counters.containsAttribute("a-rate"));
+    }
+}
@@ -1,6 +1,8 @@
 package com.github.sukhinin.micrometer.jmx;
 
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MockClock;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
@@ -8,8 +10,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javax.management.*;
+import javax.management.remote.*;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -69,6 +80,26 @@ class JmxMeterBinderTest {
         assertTrue(callbackHasBeenCalled.get());
     }
 
+    @Test
+    void shouldExtractTagsOncePerMBean() throws JMException {
+        AtomicInteger extractions = new AtomicInteger();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> {
+            extractions.incrementAndGet();
+            return EXTRACTED_TAGS;
+        }, PRESET_TAGS, mBeanServer);
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+
+        List<Iterable<Tag>> tags = new ArrayList<>();
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> tags.add(ctx.getTags()));
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> tags.add(ctx.getTags()));
+        binder.bindMetricsForMBeanType(new SimpleMeterRegistry(), OBJECT_TYPE_ATTRIBUTE, ctx -> tags.add(ctx.getTags()));
+
+        assertEquals(1, extractions.get());
+        assertEquals(3, tags.size());
+        assertSame(tags.get(0), tags.get(2));
+    }
+
     @Test
     void shouldUnregisterMBeanServerNotificationListenersOnClose() throws JMException {
         MBeanServer spyMBeanServer = spy(mBeanServer);
@@ -82,4 +113,404 @@ class JmxMeterBinderTest {
         verify(spyMBeanServer, times(1)).removeNotificationListener(any(ObjectName.class), any(NotificationListener.class));
     }
 
+    @Test
+    void shouldRetryFailedSubscriptionOnNextBinding() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        doThrow(new InstanceNotFoundException()).doCallRealMethod()
+                .when(spyMBeanServer).addNotificationListener(any(ObjectName.class), any(NotificationListener.class), any(), any());
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, spyMBeanServer);
+
+        assertThrows(RuntimeException.class, () -> binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> {}));
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(OBJECT_NAME));
+
+        assertEquals(1.0, registry.get("double.value").gauge().value());
+        binder.close();
+    }
+
+    @Test
+    void shouldBindAgainAfterClose() throws JMException {
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().selfMetrics(selfRegistry).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer, config);
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        binder.close();
+
+        MeterRegistry otherRegistry = new SimpleMeterRegistry();
+        binder.bindMetricsForMBeanType(otherRegistry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(OBJECT_NAME));
+
+        assertTrue(registry.getMeters().isEmpty());
+        assertEquals(1.0, otherRegistry.get("double.value").gauge().value());
+        assertEquals(1.0, selfRegistry.get("jmx.binder.mbeans").gauge().value());
+        binder.close();
+        assertTrue(otherRegistry.getMeters().isEmpty());
+        assertTrue(selfRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldShareCachedValuesBetweenRegistriesWithinTtl() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(OBJECT_NAME));
+
+        MockClock clock = new MockClock();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().valueCacheTtl(Duration.ofSeconds(1)).clock(clock).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, spyMBeanServer, config);
+
+        MeterRegistry otherRegistry = new SimpleMeterRegistry();
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        binder.bindMetricsForMBeanType(otherRegistry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+
+        assertEquals(1.0, registry.get("double.value").gauge().value());
+        assertEquals(1.0, otherRegistry.get("double.value").gauge().value());
+        assertEquals(1.0, registry.get("double.value").gauge().value());
+        verify(spyMBeanServer, times(1)).getAttributes(any(ObjectName.class), any(String[].class));
+
+        clock.add(Duration.ofSeconds(1));
+        assertEquals(1.0, otherRegistry.get("double.value").gauge().value());
+        verify(spyMBeanServer, times(2)).getAttributes(any(ObjectName.class), any(String[].class));
+    }
+
+    @Test
+    void shouldShareSingleMBeanServerNotificationListenerBetweenTypes() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, spyMBeanServer);
+
+        AtomicInteger valueCallbackCalls = new AtomicInteger();
+        AtomicInteger otherCallbackCalls = new AtomicInteger();
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> valueCallbackCalls.incrementAndGet());
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> valueCallbackCalls.incrementAndGet());
+        binder.bindMetricsForMBeanType(registry, "Other", ctx -> otherCallbackCalls.incrementAndGet());
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName("other.domain:type=" + OBJECT_TYPE_ATTRIBUTE));
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(JMX_DOMAIN + ":name=Untyped"));
+
+        verify(spyMBeanServer, times(1)).addNotificationListener(any(ObjectName.class), any(NotificationListener.class), any(), any());
+        assertEquals(2, valueCallbackCalls.get());
+        assertEquals(0, otherCallbackCalls.get());
+    }
+
+    @Test
+    void shouldRemoveMetersWhenMBeanIsUnregistered() throws JMException {
+        TagsExtractor tagger = obj -> Tags.of("name", String.valueOf(obj.getKeyProperty("name")));
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, mBeanServer);
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(JMX_DOMAIN + ":type=" + OBJECT_TYPE_ATTRIBUTE + ",name=other"));
+
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> {
+            ctx.bindGauge("Value", "double.value", "");
+            ctx.bindFunctionCounter("Value", "double.value.total", "");
+        });
+        assertEquals(2, registry.find("double.value").gauges().size());
+
+        mBeanServer.unregisterMBean(new ObjectName(OBJECT_NAME));
+
+        assertEquals(1, registry.find("double.value").gauges().size());
+        assertEquals(1, registry.find("double.value.total").functionCounters().size());
+    }
+
+    @Test
+    void shouldRemoveMetersOnClose() throws JMException {
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer);
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+
+        MeterRegistry otherRegistry = new SimpleMeterRegistry();
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        binder.bindMetricsForMBeanType(otherRegistry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+
+        binder.close();
+
+        assertTrue(registry.getMeters().isEmpty());
+        assertTrue(otherRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldBindFutureMBeansOnBindingExecutorWithDeduplication() throws JMException {
+        List<Runnable> tasks = new ArrayList<>();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().bindingExecutor(tasks::add).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer, config);
+
+        AtomicInteger callbackCalls = new AtomicInteger();
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> callbackCalls.incrementAndGet());
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+        mBeanServer.unregisterMBean(new ObjectName(OBJECT_NAME));
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+
+        assertEquals(0, callbackCalls.get());
+        assertEquals(1, tasks.size());
+
+        tasks.forEach(Runnable::run);
+        assertEquals(1, callbackCalls.get());
+    }
+
+    @Test
+    void shouldNotQueueMBeansWithoutBindings() throws JMException {
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        List<Runnable> tasks = new ArrayList<>();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().bindingExecutor(tasks::add).selfMetrics(selfRegistry).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer, config);
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(JMX_DOMAIN + ":type=Other"));
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(JMX_DOMAIN + ":name=untyped"));
+        assertTrue(tasks.isEmpty());
+        assertEquals(0, selfRegistry.get("jmx.binder.bind.latency").timer().count());
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+        assertEquals(1, tasks.size());
+        tasks.forEach(Runnable::run);
+        assertEquals(1, selfRegistry.get("jmx.binder.bind.latency").timer().count());
+        binder.close();
+    }
+
+    @Test
+    void shouldNotBindQueuedMBeansAfterClose() throws JMException {
+        List<Runnable> tasks = new ArrayList<>();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().bindingExecutor(tasks::add).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer, config);
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+        binder.close();
+        tasks.forEach(Runnable::run);
+
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldUnbindQueuedMBeanUnregisteredWhileBinding() throws Exception {
+        ObjectName obj = new ObjectName(OBJECT_NAME);
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        List<Runnable> tasks = new ArrayList<>();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().bindingExecutor(tasks::add).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, spyMBeanServer, config);
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        mBeanServer.registerMBean(new DoubleValue(), obj);
+
+        // The MBean goes away right after the binding has checked that it is still registered
+        AtomicBoolean unregistered = new AtomicBoolean();
+        doAnswer(invocation -> {
+            boolean registered = mBeanServer.isRegistered(obj);
+            if (unregistered.compareAndSet(false, true)) {
+                mBeanServer.unregisterMBean(obj);
+            }
+            return registered;
+        }).when(spyMBeanServer).isRegistered(obj);
+        tasks.forEach(Runnable::run);
+
+        assertFalse(mBeanServer.isRegistered(obj));
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldCountFailedBindingsOnBindingExecutor() throws JMException {
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        List<Runnable> tasks = new ArrayList<>();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().bindingExecutor(tasks::add).selfMetrics(selfRegistry).build();
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer, config);
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> {
+            throw new IllegalStateException("Binding failed");
+        });
+
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME));
+        List<Throwable> reported = new ArrayList<>();
+        Thread.UncaughtExceptionHandler handler = Thread.currentThread().getUncaughtExceptionHandler();
+        Thread.currentThread().setUncaughtExceptionHandler((thread, e) -> reported.add(e));
+        try {
+            tasks.forEach(Runnable::run);
+        } finally {
+            Thread.currentThread().setUncaughtExceptionHandler(handler);
+        }
+
+        assertEquals(1, reported.size());
+        assertEquals(1.0, selfRegistry.get("jmx.binder.bind.failures").counter().count());
+        binder.close();
+    }
+
+    @Test
+    void shouldBindMetersThroughRemoteConnection() throws Exception {
+        JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://localhost"), null, mBeanServer);
+        connectorServer.start();
+        ExecutorService readExecutor = Executors.newFixedThreadPool(2);
+        try (JMXConnector connector = JMXConnectorFactory.connect(connectorServer.getAddress())) {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().readExecutor(readExecutor).build();
+            TagsExtractor tagger = obj -> Tags.of("name", String.valueOf(obj.getKeyProperty("name")));
+            JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, connection, config);
+
+            mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(JMX_DOMAIN + ":type=" + OBJECT_TYPE_ATTRIBUTE + ",name=existing"));
+            binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+            mBeanServer.registerMBean(new DoubleValue(2.0), new ObjectName(JMX_DOMAIN + ":type=" + OBJECT_TYPE_ATTRIBUTE + ",name=future"));
+
+            // Remote notifications are delivered asynchronously
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (registry.find("double.value").tag("name", "future").gauge() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1.0, registry.get("double.value").tag("name", "existing").gauge().value());
+            assertEquals(2.0, registry.get("double.value").tag("name", "future").gauge().value());
+            binder.close();
+        } finally {
+            readExecutor.shutdown();
+            connectorServer.stop();
+        }
+    }
+
+    @Test
+    void shouldPrefetchOtherMBeansOnReadExecutor() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        List<Runnable> tasks = new ArrayList<>();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().readExecutor(tasks::add).build();
+        TagsExtractor tagger = obj -> Tags.of("name", String.valueOf(obj.getKeyProperty("name")));
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, spyMBeanServer, config);
+
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(JMX_DOMAIN + ":type=" + OBJECT_TYPE_ATTRIBUTE + ",name=first"));
+        mBeanServer.registerMBean(new DoubleValue(2.0), new ObjectName(JMX_DOMAIN + ":type=" + OBJECT_TYPE_ATTRIBUTE + ",name=second"));
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+
+        assertEquals(1.0, registry.get("double.value").tag("name", "first").gauge().value());
+        assertEquals(1, tasks.size());
+        tasks.forEach(Runnable::run);
+        verify(spyMBeanServer, times(2)).getAttributes(any(ObjectName.class), any(String[].class));
+
+        assertEquals(2.0, registry.get("double.value").tag("name", "second").gauge().value());
+        verify(spyMBeanServer, times(2)).getAttributes(any(ObjectName.class), any(String[].class));
+    }
+
+    @Test
+    void shouldPublishBinderMetrics() throws JMException {
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().selfMetrics(selfRegistry).build();
+        TagsExtractor tagger = obj -> Tags.of("name", String.valueOf(obj.getKeyProperty("name")));
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, mBeanServer, config);
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(OBJECT_NAME));
+
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> {
+            ctx.bindGauge("Value", "double.value", "");
+            ctx.bindGauge("Missing", "missing.value", "");
+        });
+        mBeanServer.registerMBean(new DoubleValue(2.0), new ObjectName(OBJECT_NAME + ",name=future"));
+        assertEquals(4.0, selfRegistry.get("jmx.binder.meters").tag("domain", JMX_DOMAIN).gauge().value());
+        assertEquals(2.0, selfRegistry.get("jmx.binder.mbeans").gauge().value());
+        assertEquals(1, selfRegistry.get("jmx.binder.bind.latency").timer().count());
+
+        registry.get("double.value").gauges().forEach(Gauge::value);
+        assertEquals(2, selfRegistry.get("jmx.binder.read").tag("type", OBJECT_TYPE_ATTRIBUTE).timer().count());
+        assertEquals(4.0, selfRegistry.get("jmx.binder.attribute.reads").counter().count());
+        assertEquals(0.0, selfRegistry.get("jmx.binder.read.failures").counter().count());
+
+        // Reading a missing attribute removes its meter under the default failure policy
+        registry.get("missing.value").gauges().forEach(Gauge::value);
+        assertEquals(2.0, selfRegistry.get("jmx.binder.meters").gauge().value());
+
+        mBeanServer.unregisterMBean(new ObjectName(OBJECT_NAME));
+        assertEquals(1.0, selfRegistry.get("jmx.binder.meters").gauge().value());
+        assertEquals(1.0, selfRegistry.get("jmx.binder.mbeans").gauge().value());
+
+        binder.close();
+        assertTrue(selfRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldShareBinderMetricsOfSameDomain() throws JMException {
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().selfMetrics(selfRegistry).build();
+        TagsExtractor tagger = obj -> Tags.of("name", String.valueOf(obj.getKeyProperty("name")));
+        JmxMeterBinder first = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, mBeanServer, config);
+        JmxMeterBinder second = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, mBeanServer, config);
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(OBJECT_NAME + ",name=first"));
+        mBeanServer.registerMBean(new DoubleValue(2.0), new ObjectName(JMX_DOMAIN + ":type=Other,name=second"));
+
+        first.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        second.bindMetricsForMBeanType(registry, "Other", ctx -> ctx.bindGauge("Value", "other.value", ""));
+        assertEquals(2.0, selfRegistry.get("jmx.binder.meters").gauge().value());
+        assertEquals(2.0, selfRegistry.get("jmx.binder.mbeans").gauge().value());
+
+        first.close();
+        assertEquals(1.0, selfRegistry.get("jmx.binder.meters").gauge().value());
+        assertEquals(1.0, selfRegistry.get("jmx.binder.mbeans").gauge().value());
+
+        second.close();
+        assertTrue(selfRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldReleaseBinderMetricsOnceWhenClosedTwice() throws JMException {
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        JmxMeterBinderConfig config = JmxMeterBinderConfig.builder().selfMetrics(selfRegistry).build();
+        JmxMeterBinder first = new JmxMeterBinder(JMX_DOMAIN, obj -> Tags.empty(), PRESET_TAGS, mBeanServer, config);
+        JmxMeterBinder second = new JmxMeterBinder(JMX_DOMAIN, obj -> Tags.empty(), PRESET_TAGS, mBeanServer, config);
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(OBJECT_NAME));
+        second.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> ctx.bindGauge("Value", "double.value", ""));
+        int meters = selfRegistry.getMeters().size();
+
+        first.close();
+        first.close();
+        assertEquals(meters, selfRegistry.getMeters().size());
+        assertEquals(1.0, selfRegistry.get("jmx.binder.mbeans").gauge().value());
+
+        second.close();
+        second.close();
+        assertTrue(selfRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldBindSeveralTypesWithSingleQueryPerDomain() throws JMException {
+        MBeanServer spyMBeanServer = spy(mBeanServer);
+        TagsExtractor tagger = obj -> Tags.of("name", String.valueOf(obj.getKeyProperty("name")));
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, tagger, PRESET_TAGS, spyMBeanServer);
+        mBeanServer.registerMBean(new DoubleValue(1.0), new ObjectName(JMX_DOMAIN + ":type=first,name=existing"));
+        mBeanServer.registerMBean(new DoubleValue(2.0), new ObjectName(JMX_DOMAIN + ":type=second,name=existing"));
+        mBeanServer.registerMBean(new DoubleValue(3.0), new ObjectName(JMX_DOMAIN + ":type=other"));
+
+        AtomicInteger firstInvocations = new AtomicInteger();
+        BindingCallback first = ctx -> {
+            firstInvocations.incrementAndGet();
+            ctx.bindGauge("Value", "first.value", "");
+        };
+        binder.bindMetricsForMBeanTypes(registry)
+                .add("first", first)
+                .add("first", first)
+                .add("second", ctx -> ctx.bindGauge("Value", "second.value", ""))
+                .bind();
+
+        verify(spyMBeanServer, times(1)).queryNames(any(), any());
+        assertEquals(1, firstInvocations.get());
+        assertEquals(1.0, registry.get("first.value").gauge().value());
+        assertEquals(2.0, registry.get("second.value").gauge().value());
+
+        mBeanServer.registerMBean(new DoubleValue(4.0), new ObjectName(JMX_DOMAIN + ":type=first,name=future"));
+        assertEquals(2, firstInvocations.get());
+        assertEquals(4.0, registry.get("first.value").tag("name", "future").gauge().value());
+    }
+
+    @Test
+    void shouldBindEveryMBeanOnceWhenRegisteredConcurrentlyWithBinding() throws Exception {
+        JmxMeterBinder binder = new JmxMeterBinder(JMX_DOMAIN, x -> EXTRACTED_TAGS, PRESET_TAGS, mBeanServer);
+        int count = 500;
+        Thread registrar = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    mBeanServer.registerMBean(new DoubleValue(), new ObjectName(OBJECT_NAME + ",name=" + i));
+                }
+            } catch (JMException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Set<ObjectName> bound = ConcurrentHashMap.newKeySet();
+        AtomicInteger invocations = new AtomicInteger();
+        registrar.start();
+        binder.bindMetricsForMBeanType(registry, OBJECT_TYPE_ATTRIBUTE, ctx -> {
+            invocations.incrementAndGet();
+            bound.add(ctx.getObjectName());
+        });
+        registrar.join();
+
+        assertEquals(count, bound.size());
+        assertEquals(count, invocations.get());
+    }
 }
@@ -0,0 +1,37 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.MBeanNotificationInfo;
+import javax.management.NotificationBroadcasterSupport;
+
+public class NotifyingDoubleValue extends NotificationBroadcasterSupport implements DoubleValueMBean {
+
+    private double value;
+
+    private long sequenceNumber;
+
+    public NotifyingDoubleValue(double value) {
+        this.value = value;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        double oldValue = this.value;
+        this.value = value;
+        sendNotification(new AttributeChangeNotification(this, ++sequenceNumber, System.currentTimeMillis(),
+                "Value changed", "Value", "double", oldValue, value));
+    }
+
+    public void setValueWithoutNotification(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return new MBeanNotificationInfo[]{new MBeanNotificationInfo(
+                new String[]{AttributeChangeNotification.ATTRIBUTE_CHANGE}, AttributeChangeNotification.class.getName(), "Value changed")};
+    }
+}
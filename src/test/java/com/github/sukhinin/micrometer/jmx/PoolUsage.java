@@ -0,0 +1,32 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PoolUsage implements PoolUsageMXBean {
+
+    private final Map<String, MemoryUsage> usageByPool = new LinkedHashMap<>();
+
+    public MemoryUsage getTotalUsage() {
+        long used = 0;
+        long committed = 0;
+        for (MemoryUsage usage : usageByPool.values()) {
+            used += usage.getUsed();
+            committed += usage.getCommitted();
+        }
+        return new MemoryUsage(0, used, committed, -1);
+    }
+
+    public Map<String, MemoryUsage> getUsageByPool() {
+        return new LinkedHashMap<>(usageByPool);
+    }
+
+    public void setUsage(String pool, long used, long committed) {
+        usageByPool.put(pool, new MemoryUsage(0, used, committed, -1));
+    }
+
+    public void removeUsage(String pool) {
+        usageByPool.remove(pool);
+    }
+}
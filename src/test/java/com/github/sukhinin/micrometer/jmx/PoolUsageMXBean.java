@@ -0,0 +1,10 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+
+public interface PoolUsageMXBean {
+    MemoryUsage getTotalUsage();
+
+    Map<String, MemoryUsage> getUsageByPool();
+}
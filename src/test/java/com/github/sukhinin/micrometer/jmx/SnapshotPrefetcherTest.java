@@ -0,0 +1,50 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SnapshotPrefetcherTest {
+
+    private static final String JMX_DOMAIN = "com.github.sukhinin.micrometer.binder.jmx";
+
+    @Test
+    void shouldWalkGroupOncePerScrape() throws JMException {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        List<Runnable> tasks = new ArrayList<>();
+        SnapshotPrefetcher prefetcher = spy(new SnapshotPrefetcher(tasks::add));
+        for (int i = 0; i < 10; i++) {
+            ObjectName obj = new ObjectName(JMX_DOMAIN + ":type=Value,name=" + i);
+            mBeanServer.registerMBean(new DoubleValue(i), obj);
+            BoundMBean boundMBean = new BoundMBean(mBeanServer, obj, Tags.of("name", String.valueOf(i)), JmxMeterBinderConfig.DEFAULT, prefetcher);
+            BindingContext ctx = new BindingContext(boundMBean, registry);
+            ctx.bindGauge("Value", "double.value", "");
+            ctx.bindGauge("Value", "double.value.copy", "");
+        }
+
+        // Scheduled refreshes have not run yet when the scrape reaches their snapshots
+        registry.getMeters().forEach(meter -> ((Gauge) meter).value());
+        assertEquals(9, tasks.size());
+        verify(prefetcher, times(1)).prefetch(any(), any());
+
+        tasks.forEach(Runnable::run);
+        tasks.clear();
+        registry.getMeters().forEach(meter -> ((Gauge) meter).value());
+        assertEquals(9, tasks.size());
+        verify(prefetcher, times(2)).prefetch(any(), any());
+    }
+}
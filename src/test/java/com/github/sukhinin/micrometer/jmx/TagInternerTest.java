@@ -0,0 +1,27 @@
+package com.github.sukhinin.micrometer.jmx;
+
+import io.micrometer.core.instrument.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagInternerTest {
+
+    @Test
+    void shouldReturnSameTagForSameKeyAndValue() {
+        TagInterner interner = new TagInterner(10);
+        Tag tag = interner.intern("topic", "topic1");
+        assertSame(tag, interner.intern("topic", new String("topic1")));
+        assertNotSame(tag, interner.intern("client.id", "topic1"));
+        assertEquals(Tag.of("topic", "topic1"), tag);
+    }
+
+    @Test
+    void shouldNotRetainTagsOverMaxSize() {
+        TagInterner interner = new TagInterner(1);
+        assertSame(interner.intern("topic", "topic1"), interner.intern("topic", "topic1"));
+        Tag tag = interner.intern("topic", "topic2");
+        assertEquals(Tag.of("topic", "topic2"), tag);
+        assertNotSame(tag, interner.intern("topic", "topic2"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.sukhinin.micrometer.jmx.discovery;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AutoDiscoveryMetricsTest {
+
+    private MeterRegistry registry;
+
+    private MBeanServer mBeanServer;
+
+    @BeforeEach
+    void beforeEachTest() throws JMException {
+        registry = new SimpleMeterRegistry();
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        mBeanServer.registerMBean(new Pool(5, 100), new ObjectName("app:type=ConnectionPool,name=primary"));
+    }
+
+    @Test
+    void shouldBindNumericAttributesByNamingRules() throws JMException {
+        AutoDiscoveryMetrics binder = new AutoDiscoveryMetrics(new ObjectName("app:type=ConnectionPool,*"), Tags.empty(), "app.", mBeanServer);
+        binder.bindTo(registry);
+
+        Gauge gauge = registry.find("app.connection-pool.active-connections").tags("name", "primary").gauge();
+        assertNotNull(gauge);
+        assertEquals(5.0, gauge.value());
+        FunctionCounter counter = registry.find("app.connection-pool.total-created-connections").tags("name", "primary").functionCounter();
+        assertNotNull(counter);
+        assertEquals(100.0, counter.count());
+        assertNull(registry.find("app.connection-pool.pool-name").meter());
+    }
+
+    @Test
+    void shouldBindMBeansRegisteredAfterBinding() throws JMException {
+        AutoDiscoveryMetrics binder = new AutoDiscoveryMetrics(new ObjectName("app:type=ConnectionPool,*"), Tags.empty(), "app.", mBeanServer);
+        binder.bindTo(registry);
+
+        mBeanServer.registerMBean(new Pool(7, 0), new ObjectName("app:type=ConnectionPool,name=secondary"));
+        Gauge gauge = registry.find("app.connection-pool.active-connections").tags("name", "secondary").gauge();
+        assertNotNull(gauge);
+        assertEquals(7.0, gauge.value());
+
+        mBeanServer.registerMBean(new Pool(1, 0), new ObjectName("app:type=Cache,name=other"));
+        assertNull(registry.find("app.cache.active-connections").meter());
+    }
+
+    @Test
+    void shouldIntrospectMBeanClassOnlyOnce() throws JMException {
+        for (int i = 0; i < 10; i++) {
+            mBeanServer.registerMBean(new Pool(i, 0), new ObjectName("app:type=ConnectionPool,name=pool-" + i));
+        }
+        MBeanServer connection = spy(mBeanServer);
+        AutoDiscoveryMetrics binder = new AutoDiscoveryMetrics(new ObjectName("app:type=ConnectionPool,*"), Tags.empty(), "app.", connection);
+        binder.bindTo(registry);
+
+        assertEquals(11, registry.find("app.connection-pool.active-connections").gauges().size());
+        verify(connection, times(1)).getMBeanInfo(any());
+    }
+
+    public interface PoolMBean {
+
+        int getActiveConnections();
+
+        long getTotalCreatedConnections();
+
+        String getPoolName();
+    }
+
+    public static class Pool implements PoolMBean {
+
+        private final int activeConnections;
+
+        private final long totalCreatedConnections;
+
+        Pool(int activeConnections, long totalCreatedConnections) {
+            this.activeConnections = activeConnections;
+            this.totalCreatedConnections = totalCreatedConnections;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return activeConnections;
+        }
+
+        @Override
+        public long getTotalCreatedConnections() {
+            return totalCreatedConnections;
+        }
+
+        @Override
+        public String getPoolName() {
+            return "pool";
+        }
+    }
+}
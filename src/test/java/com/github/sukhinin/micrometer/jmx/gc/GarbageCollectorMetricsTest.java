@@ -0,0 +1,112 @@
+package com.github.sukhinin.micrometer.jmx.gc;
+
+import com.github.sukhinin.micrometer.jmx.DoubleValueMBean;
+import com.github.sukhinin.micrometer.jmx.NotifyingDoubleValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardEmitterMBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GarbageCollectorMetricsTest {
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void beforeEachTest() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldRecordCollectionsFromNotifications() throws InterruptedException {
+        GarbageCollectorMetrics binder = new GarbageCollectorMetrics(Tags.empty(), "java.lang.", ManagementFactory.getPlatformMBeanServer());
+        binder.bindTo(registry);
+
+        assertNotNull(registry.find("java.lang.gc-memory-allocated").counter());
+        assertNotNull(registry.find("java.lang.gc-memory-promoted").counter());
+
+        System.gc();
+        // Notifications are delivered asynchronously
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (countPauses() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(countPauses() >= 1);
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+        // Collections after close don't register meters again
+        System.gc();
+        Thread.sleep(100);
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldRegisterTimerOncePerCause() throws InterruptedException {
+        List<Meter.Id> registrations = new CopyOnWriteArrayList<>();
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                if (id.getType() == Meter.Type.TIMER) {
+                    registrations.add(id);
+                }
+                return id;
+            }
+        });
+        GarbageCollectorMetrics binder = new GarbageCollectorMetrics(Tags.empty(), "java.lang.", ManagementFactory.getPlatformMBeanServer());
+        binder.bindTo(registry);
+
+        System.gc();
+        System.gc();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (countPauses() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(countPauses() >= 2);
+        assertEquals(new HashSet<>(registrations).size(), registrations.size());
+        binder.close();
+    }
+
+    @Test
+    void shouldKeepMemoryCountersUntilClose() throws JMException {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        ObjectName young = new ObjectName("java.lang:type=GarbageCollector,name=Young");
+        ObjectName old = new ObjectName("java.lang:type=GarbageCollector,name=Old");
+        for (ObjectName obj : new ObjectName[]{young, old}) {
+            NotifyingDoubleValue value = new NotifyingDoubleValue(0.0);
+            mBeanServer.registerMBean(new StandardEmitterMBean(value, DoubleValueMBean.class, value), obj);
+        }
+        GarbageCollectorMetrics binder = new GarbageCollectorMetrics(Tags.of("app", "test"), "java.lang.", mBeanServer);
+        binder.bindTo(registry);
+
+        // Counters are shared by all collectors, so unbinding one of them keeps them
+        Counter allocated = registry.get("java.lang.gc-memory-allocated").tag("app", "test").counter();
+        mBeanServer.unregisterMBean(young);
+        assertSame(allocated, registry.get("java.lang.gc-memory-allocated").counter());
+        assertNotNull(registry.find("java.lang.gc-memory-promoted").counter());
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    private long countPauses() {
+        Timer pause = registry.find("java.lang.gc-pause").tag("cause", "System.gc()").timer();
+        return pause != null ? pause.count() : 0;
+    }
+}
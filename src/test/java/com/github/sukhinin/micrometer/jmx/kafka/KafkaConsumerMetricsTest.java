@@ -1,7 +1,12 @@
 package com.github.sukhinin.micrometer.jmx.kafka;
 
+import com.github.sukhinin.micrometer.jmx.AnyAttributeValue;
+import com.github.sukhinin.micrometer.jmx.BindingPlan;
 import com.github.sukhinin.micrometer.jmx.DoubleValue;
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
 import com.github.sukhinin.micrometer.jmx.TagsUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
@@ -15,8 +20,7 @@ import javax.management.MBeanServerFactory;
 import javax.management.ObjectName;
 import java.util.Arrays;
 
-import static org.junit.jupiter.api.Assertions.assertIterableEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 class KafkaConsumerMetricsTest {
 
@@ -64,4 +68,133 @@ class KafkaConsumerMetricsTest {
         assertNotNull(fetchLatencyAvgMeter);
         assertIterableEquals(Arrays.asList("client.id"), TagsUtil.getKeys(fetchLatencyAvgMeter.getId().getTags()));
     }
+
+    @Test
+    void shouldNotBindPartitionMetricsOverPartitionLimit() throws JMException {
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client1,topic=topic1,partition=partition2"));
+
+        KafkaMetricsConfig config = KafkaMetricsConfig.builder().maxPartitionsPerClient(1).build();
+        KafkaConsumerMetrics binder = new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, config);
+        binder.bindTo(registry);
+
+        assertEquals(1, registry.find("kafka.consumer.records-lag").gauges().size());
+        assertEquals(1, registry.find("kafka.consumer.bytes-consumed-rate").gauges().size());
+        assertEquals(7.0, registry.get("kafka.consumer.dropped-meters").counter().count());
+
+        String boundPartition = registry.get("kafka.consumer.records-lag").gauge().getId().getTag("partition");
+        mBeanServer.unregisterMBean(new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client1,topic=topic1,partition=" + boundPartition));
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client1,topic=topic1,partition=partition3"));
+        assertEquals(1, registry.find("kafka.consumer.records-lag").tag("partition", "partition3").gauges().size());
+    }
+
+    @Test
+    void shouldNotBindTopicMetricsForFilteredTopics() {
+        KafkaMetricsConfig config = KafkaMetricsConfig.builder().topicFilter(topic -> !topic.equals("topic1")).build();
+        KafkaConsumerMetrics binder = new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, config);
+        binder.bindTo(registry);
+
+        assertNull(registry.find("kafka.consumer.records-lag").gauge());
+        assertNull(registry.find("kafka.consumer.bytes-consumed-rate").gauge());
+        assertNotNull(registry.find("kafka.consumer.fetch-latency-avg").timeGauge());
+        assertEquals(14.0, registry.get("kafka.consumer.dropped-meters").counter().count());
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldAggregateRecordsLagPerTopic() throws JMException {
+        mBeanServer.registerMBean(new AnyAttributeValue(10.0), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client2,topic=topic2,partition=0"));
+        mBeanServer.registerMBean(new AnyAttributeValue(30.0), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client2,topic=topic2,partition=1"));
+
+        KafkaMetricsConfig config = KafkaMetricsConfig.builder().topicLagAggregation(true).maxPartitionsPerClient(0).build();
+        KafkaConsumerMetrics binder = new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, config);
+        binder.bindTo(registry);
+
+        assertNull(registry.find("kafka.consumer.records-lag").gauge());
+        assertEquals(40.0, registry.get("kafka.consumer.topic.records-lag-sum").tags("client.id", "client2", "topic", "topic2").gauge().value());
+        assertEquals(30.0, registry.get("kafka.consumer.topic.records-lag-max").tags("client.id", "client2", "topic", "topic2").gauge().value());
+
+        mBeanServer.unregisterMBean(new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client2,topic=topic2,partition=1"));
+        assertEquals(10.0, registry.get("kafka.consumer.topic.records-lag-sum").tags("client.id", "client2", "topic", "topic2").gauge().value());
+
+        mBeanServer.unregisterMBean(new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client2,topic=topic2,partition=0"));
+        assertNull(registry.find("kafka.consumer.topic.records-lag-sum").tags("client.id", "client2").gauge());
+
+        binder.close();
+        assertNull(registry.find("kafka.consumer.topic.records-lag-sum").gauge());
+    }
+
+    @Test
+    void shouldReadAggregatedRecordsLagWithOtherMetersOfPartition() throws JMException {
+        mBeanServer.registerMBean(new AnyAttributeValue(10.0), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client2,topic=topic2,partition=0"));
+        mBeanServer.registerMBean(new AnyAttributeValue(30.0), new ObjectName("kafka.consumer:type=consumer-fetch-manager-metrics,client-id=client2,topic=topic2,partition=1"));
+
+        MeterRegistry selfRegistry = new SimpleMeterRegistry();
+        KafkaMetricsConfig config = KafkaMetricsConfig.builder()
+                .binderConfig(JmxMeterBinderConfig.builder().selfMetrics(selfRegistry).build())
+                .topicLagAggregation(true)
+                .build();
+        KafkaConsumerMetrics binder = new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, config);
+        binder.bindTo(registry);
+
+        // Partition meters and lag of the partition are read with a single read of its MBean
+        registry.find("kafka.consumer.records-lag").tags("client.id", "client2").gauges().forEach(Gauge::value);
+        assertEquals(40.0, registry.get("kafka.consumer.topic.records-lag-sum").tags("client.id", "client2", "topic", "topic2").gauge().value());
+        assertEquals(30.0, registry.get("kafka.consumer.topic.records-lag-max").tags("client.id", "client2", "topic", "topic2").gauge().value());
+        assertEquals(2, selfRegistry.get("jmx.binder.read").tag("type", "consumer-fetch-manager-metrics").timer().count());
+        binder.close();
+    }
+
+    @Test
+    void shouldBindAdditionalPlansWithinCardinalityLimits() {
+        BindingPlan plan = BindingPlan.builder()
+                .gauge("records-lag-p99", "records-lag-p99", "The 99th percentile lag of the partition.")
+                .build();
+        KafkaMetricsConfig config = KafkaMetricsConfig.builder()
+                .additionalPlan("consumer-fetch-manager-metrics", plan)
+                .topicFilter(topic -> !topic.equals("topic1"))
+                .build();
+        KafkaConsumerMetrics binder = new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, config);
+        binder.bindTo(registry);
+
+        Meter clientLevelMeter = registry.find("kafka.consumer.records-lag-p99").meter();
+        assertNotNull(clientLevelMeter);
+        assertIterableEquals(Arrays.asList("client.id"), TagsUtil.getKeys(clientLevelMeter.getId().getTags()));
+        assertEquals(16.0, registry.get("kafka.consumer.dropped-meters").counter().count());
+    }
+
+    @Test
+    void shouldBindSubsetOfMetersSelectedByProfile() {
+        KafkaMetricsConfig standard = KafkaMetricsConfig.builder().profile(KafkaMetricsProfile.STANDARD).build();
+        new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, standard).bindTo(registry);
+        assertNotNull(registry.find("kafka.consumer.commit-total").functionCounter());
+        assertNull(registry.find("kafka.consumer.commit-rate").meter());
+        assertNotNull(registry.find("kafka.consumer.commit-latency-avg").meter());
+        assertNull(registry.find("kafka.consumer.rebalance-rate-per-hour").meter());
+        assertNotNull(registry.find("kafka.consumer.fetch-total").functionCounter());
+        assertNull(registry.find("kafka.consumer.fetch-rate").meter());
+        // There is no counter to derive the request size from
+        assertNotNull(registry.find("kafka.consumer.request-size-avg").meter());
+
+        MeterRegistry minimalRegistry = new SimpleMeterRegistry();
+        KafkaMetricsConfig minimal = KafkaMetricsConfig.builder().profile(KafkaMetricsProfile.MINIMAL).build();
+        new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, minimal).bindTo(minimalRegistry);
+        assertNotNull(minimalRegistry.find("kafka.consumer.records-lag").meter());
+        assertNotNull(minimalRegistry.find("kafka.consumer.commit-latency-max").meter());
+        assertNotNull(minimalRegistry.find("kafka.consumer.records-lead-min").meter());
+        assertNotNull(minimalRegistry.find("kafka.consumer.records-lag-max").meter());
+        assertNull(minimalRegistry.find("kafka.consumer.records-lead-avg").meter());
+        assertNull(minimalRegistry.find("kafka.consumer.records-consumed-rate").meter());
+        assertNull(minimalRegistry.find("kafka.consumer.rebalance-rate-per-hour").meter());
+        assertNull(minimalRegistry.find("kafka.consumer.commit-latency-avg").meter());
+        assertNull(minimalRegistry.find("kafka.consumer.io-ratio").meter());
+
+        MeterRegistry countersRegistry = new SimpleMeterRegistry();
+        KafkaMetricsConfig countersOnly = KafkaMetricsConfig.builder().profile(KafkaMetricsProfile.COUNTERS_ONLY).build();
+        new KafkaConsumerMetrics(Tags.empty(), "kafka.consumer.", mBeanServer, countersOnly).bindTo(countersRegistry);
+        assertFalse(countersRegistry.getMeters().isEmpty());
+        assertTrue(countersRegistry.getMeters().stream().allMatch(meter -> meter instanceof FunctionCounter));
+        assertNotNull(countersRegistry.find("kafka.consumer.fetch-total").functionCounter());
+    }
 }
@@ -0,0 +1,55 @@
+package com.github.sukhinin.micrometer.jmx.memory;
+
+import com.github.sukhinin.micrometer.jmx.DoubleValue;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolMetricsTest {
+
+    @Test
+    void shouldBindUsageOfDirectBuffers() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        BufferPoolMetrics binder = new BufferPoolMetrics(Tags.empty(), "java.nio.", ManagementFactory.getPlatformMBeanServer());
+        binder.bindTo(registry);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        Gauge count = registry.find("java.nio.buffer-pool-count").tag("pool", "direct").gauge();
+        Gauge capacity = registry.find("java.nio.buffer-pool-total-capacity").tag("pool", "direct").gauge();
+        assertNotNull(count);
+        assertNotNull(registry.find("java.nio.buffer-pool-memory-used").tag("pool", "direct").gauge());
+        assertNotNull(capacity);
+        assertTrue(count.value() >= 1);
+        assertTrue(capacity.value() >= buffer.capacity());
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldBindBufferPoolWithoutName() throws JMException {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        mBeanServer.registerMBean(new DoubleValue(), new ObjectName("java.nio:type=BufferPool"));
+        BufferPoolMetrics binder = new BufferPoolMetrics(Tags.empty(), "java.nio.", mBeanServer);
+        binder.bindTo(registry);
+
+        Gauge count = registry.find("java.nio.buffer-pool-count").gauge();
+        assertNotNull(count);
+        assertNull(count.getId().getTag("pool"));
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.sukhinin.micrometer.jmx.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryPoolMetricsTest {
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void beforeEachTest() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldBindUsageOfEveryPool() {
+        MemoryPoolMetrics binder = new MemoryPoolMetrics(Tags.empty(), "java.lang.", ManagementFactory.getPlatformMBeanServer());
+        binder.bindTo(registry);
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            Gauge used = registry.find("java.lang.memory-pool-used").tag("pool", pool.getName()).gauge();
+            Gauge max = registry.find("java.lang.memory-pool-max").tag("pool", pool.getName()).gauge();
+            assertNotNull(used);
+            assertNotNull(registry.find("java.lang.memory-pool-committed").tag("pool", pool.getName()).gauge());
+            assertNotNull(max);
+            assertTrue(used.value() >= 0);
+            assertEquals(pool.getUsage().getMax(), max.value());
+        }
+        assertNull(registry.find("java.lang.memory-pool-threshold-crossings").counter());
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldArmCollectionUsageThresholdAndCountCrossings() throws InterruptedException {
+        // Young generation pools are empty after a full collection, so the old generation pool is used
+        Optional<MemoryPoolMXBean> heapPool = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .filter(pool -> !pool.getName().contains("Eden") && !pool.getName().contains("Survivor"))
+                .filter(MemoryPoolMXBean::isCollectionUsageThresholdSupported)
+                .filter(pool -> pool.getUsage().getMax() > 0)
+                .findFirst();
+        assertTrue(heapPool.isPresent());
+
+        MemoryPoolMetricsConfig config = MemoryPoolMetricsConfig.builder().collectionUsageThreshold(0.000_000_001).build();
+        MemoryPoolMetrics binder = new MemoryPoolMetrics(Tags.empty(), "java.lang.", ManagementFactory.getPlatformMBeanServer(), config);
+        binder.bindTo(registry);
+
+        String poolName = heapPool.get().getName();
+        assertTrue(heapPool.get().getCollectionUsageThreshold() > 0);
+        Counter crossings = registry.find("java.lang.memory-pool-threshold-crossings").tags("pool", poolName, "threshold", "collection").counter();
+        assertNotNull(crossings);
+
+        // Anything surviving a full collection exceeds the tiny threshold; notifications are delivered asynchronously
+        System.gc();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (crossingsOf(poolName) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(crossingsOf(poolName) >= 1);
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+        assertEquals(0, heapPool.get().getCollectionUsageThreshold());
+    }
+
+    private double crossingsOf(String poolName) {
+        Collection<Counter> counters = registry.find("java.lang.memory-pool-threshold-crossings").tags("pool", poolName).counters();
+        return counters.stream().mapToDouble(Counter::count).sum();
+    }
+
+    @Test
+    void shouldRejectThresholdsOutsideOfMaximumSize() {
+        assertThrows(IllegalArgumentException.class, () -> MemoryPoolMetricsConfig.builder().usageThreshold(1.5));
+        assertThrows(IllegalArgumentException.class, () -> MemoryPoolMetricsConfig.builder().collectionUsageThreshold(-0.1));
+    }
+}
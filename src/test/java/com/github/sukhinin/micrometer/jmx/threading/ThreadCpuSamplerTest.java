@@ -0,0 +1,160 @@
+package com.github.sukhinin.micrometer.jmx.threading;
+
+import com.github.sukhinin.micrometer.jmx.JmxMeterBinderConfig;
+import com.sun.management.ThreadMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.lang.management.ThreadInfo;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class ThreadCpuSamplerTest {
+
+    private MeterRegistry registry;
+
+    private MockClock clock;
+
+    private ThreadMXBean threads;
+
+    private final Map<Long, Long> cpuTimes = new HashMap<>();
+
+    private final Map<Long, ThreadInfo> infos = new HashMap<>();
+
+    @BeforeEach
+    void beforeEachTest() {
+        registry = new SimpleMeterRegistry();
+        clock = new MockClock();
+        threads = mock(ThreadMXBean.class);
+        when(threads.getAllThreadIds()).thenAnswer(invocation -> cpuTimes.keySet().stream().mapToLong(Long::longValue).sorted().toArray());
+        when(threads.getThreadCpuTime(any(long[].class))).thenAnswer(invocation ->
+                Arrays.stream((long[]) invocation.getArgument(0)).map(cpuTimes::get).toArray());
+        when(threads.getThreadInfo(any(long[].class), anyInt())).thenAnswer(invocation ->
+                Arrays.stream((long[]) invocation.getArgument(0)).mapToObj(infos::get).toArray(ThreadInfo[]::new));
+    }
+
+    @Test
+    void shouldPublishTopThreadsByCpuUsage() {
+        addThread(1, "main");
+        addThread(2, "worker-1");
+        addThread(3, "worker-2");
+        ThreadingMetricsConfig config = ThreadingMetricsConfig.builder()
+                .binderConfig(JmxMeterBinderConfig.builder().clock(clock).build())
+                .topThreads(2)
+                .threadGroup("workers", Pattern.compile("worker-.*"))
+                .build();
+        ThreadCpuSampler sampler = new ThreadCpuSampler(threads, "java.lang.", Tags.empty(), config);
+        sampler.addRegistry(registry);
+        sampler.run();
+
+        clock.add(1, TimeUnit.SECONDS);
+        cpuTimes.put(1L, TimeUnit.MILLISECONDS.toNanos(100));
+        cpuTimes.put(2L, TimeUnit.MILLISECONDS.toNanos(500));
+        cpuTimes.put(3L, TimeUnit.MILLISECONDS.toNanos(200));
+        sampler.run();
+
+        assertEquals(0.5, registry.get("java.lang.thread-cpu-usage").tag("thread", "worker-1").gauge().value(), 1e-9);
+        assertEquals(0.2, registry.get("java.lang.thread-cpu-usage").tag("thread", "worker-2").gauge().value(), 1e-9);
+        assertNull(registry.find("java.lang.thread-cpu-usage").tag("thread", "main").gauge());
+        assertEquals(0.7, registry.get("java.lang.thread-group-cpu-time").tag("group", "workers").functionCounter().count(), 1e-9);
+        assertEquals(2.0, registry.get("java.lang.thread-group-threads").tag("group", "workers").gauge().value());
+
+        clock.add(1, TimeUnit.SECONDS);
+        cpuTimes.put(1L, TimeUnit.MILLISECONDS.toNanos(1100));
+        sampler.run();
+
+        assertEquals(1.0, registry.get("java.lang.thread-cpu-usage").tag("thread", "main").gauge().value(), 1e-9);
+        assertEquals(2, registry.find("java.lang.thread-cpu-usage").gauges().size());
+
+        sampler.removeMeters();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldContinueWithThreadsLeftOutWhenBudgetIsExhausted() {
+        for (long id = 1; id <= 600; id++) {
+            addThread(id, "worker-" + id);
+        }
+        // Every bulk read takes longer than the whole budget
+        when(threads.getThreadCpuTime(any(long[].class))).thenAnswer(invocation -> {
+            clock.add(2, TimeUnit.MILLISECONDS);
+            return Arrays.stream((long[]) invocation.getArgument(0)).map(cpuTimes::get).toArray();
+        });
+        ThreadingMetricsConfig config = ThreadingMetricsConfig.builder()
+                .binderConfig(JmxMeterBinderConfig.builder().clock(clock).build())
+                .topThreads(1)
+                .samplingBudget(Duration.ofMillis(1))
+                .build();
+        ThreadCpuSampler sampler = new ThreadCpuSampler(threads, "java.lang.", Tags.empty(), config);
+        sampler.addRegistry(registry);
+
+        sampler.run();
+        sampler.run();
+        sampler.run();
+
+        ArgumentCaptor<long[]> chunks = ArgumentCaptor.forClass(long[].class);
+        verify(threads, times(3)).getThreadCpuTime(chunks.capture());
+        assertArrayEquals(LongStream.rangeClosed(1, 256).toArray(), chunks.getAllValues().get(0));
+        assertArrayEquals(LongStream.rangeClosed(257, 512).toArray(), chunks.getAllValues().get(1));
+        assertArrayEquals(LongStream.rangeClosed(513, 600).toArray(), chunks.getAllValues().get(2));
+        assertEquals(3.0, registry.get("java.lang.thread-samples-incomplete").functionCounter().count());
+    }
+
+    @Test
+    void shouldKeepTopThreadsLeftOutOfIncompleteSample() {
+        for (long id = 1; id <= 300; id++) {
+            addThread(id, "worker-" + id);
+        }
+        // Every bulk read takes longer than the whole budget, so each sample reads a single chunk
+        when(threads.getThreadCpuTime(any(long[].class))).thenAnswer(invocation -> {
+            clock.add(2, TimeUnit.MILLISECONDS);
+            return Arrays.stream((long[]) invocation.getArgument(0)).map(cpuTimes::get).toArray();
+        });
+        ThreadingMetricsConfig config = ThreadingMetricsConfig.builder()
+                .binderConfig(JmxMeterBinderConfig.builder().clock(clock).build())
+                .topThreads(1)
+                .samplingBudget(Duration.ofMillis(1))
+                .build();
+        ThreadCpuSampler sampler = new ThreadCpuSampler(threads, "java.lang.", Tags.empty(), config);
+        sampler.addRegistry(registry);
+        sampler.run();
+        sampler.run();
+
+        cpuTimes.put(1L, TimeUnit.MILLISECONDS.toNanos(2));
+        sampler.run();
+        Gauge gauge = registry.get("java.lang.thread-cpu-usage").tag("thread", "worker-1").gauge();
+        double value = gauge.value();
+        assertTrue(value > 0);
+
+        // Threads 257 to 300 are read, worker-1 is not
+        sampler.run();
+        assertSame(gauge, registry.get("java.lang.thread-cpu-usage").tag("thread", "worker-1").gauge());
+        assertEquals(value, gauge.value());
+        assertEquals(1, registry.find("java.lang.thread-cpu-usage").gauges().size());
+    }
+
+    private void addThread(long id, String name) {
+        ThreadInfo info = mock(ThreadInfo.class);
+        when(info.getThreadName()).thenReturn(name);
+        when(info.getBlockedTime()).thenReturn(-1L);
+        when(info.getWaitedTime()).thenReturn(-1L);
+        cpuTimes.put(id, 0L);
+        infos.put(id, info);
+    }
+}
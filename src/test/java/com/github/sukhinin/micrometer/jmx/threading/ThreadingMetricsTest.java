@@ -15,10 +15,15 @@ import javax.management.MBeanServer;
 import javax.management.MBeanServerFactory;
 import javax.management.ObjectName;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class ThreadingMetricsTest {
 
@@ -42,4 +47,44 @@ class ThreadingMetricsTest {
         assertNotNull(daemonThreadCountMeter);
         assertIterableEquals(Collections.emptyList(), TagsUtil.getKeys(daemonThreadCountMeter.getId().getTags()));
     }
+
+    @Test
+    void shouldSampleThreadsOfPlatformMBeanServer() throws InterruptedException {
+        ThreadingMetricsConfig config = ThreadingMetricsConfig.builder()
+                .topThreads(3)
+                .threadGroup("main", Pattern.compile("main"))
+                .samplingInterval(Duration.ofMillis(10))
+                .build();
+        ThreadingMetrics binder = new ThreadingMetrics(Tags.empty(), "java.lang.", ManagementFactory.getPlatformMBeanServer(), config);
+        binder.bindTo(registry);
+
+        // Top threads are known from the second sample on
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (registry.find("java.lang.thread-cpu-usage").gauge() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(registry.find("java.lang.thread-cpu-usage").gauge());
+        assertNotNull(registry.find("java.lang.thread-group-cpu-time").tag("group", "main").functionCounter());
+
+        binder.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void shouldRestoreContentionMonitoringOnClose() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadContentionMonitoringSupported());
+        boolean enabled = threads.isThreadContentionMonitoringEnabled();
+        ThreadingMetricsConfig config = ThreadingMetricsConfig.builder()
+                .topThreads(1)
+                .contentionMonitoring(true)
+                .samplingInterval(Duration.ofMillis(10))
+                .build();
+        ThreadingMetrics binder = new ThreadingMetrics(Tags.empty(), "java.lang.", ManagementFactory.getPlatformMBeanServer(), config);
+        binder.bindTo(registry);
+        assertTrue(threads.isThreadContentionMonitoringEnabled());
+
+        binder.close();
+        assertEquals(enabled, threads.isThreadContentionMonitoringEnabled());
+    }
 }